@@ -0,0 +1,233 @@
+package org.uiflow.desktop.gradient;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Immutable color gradient stored as sorted arrays of stop positions and packed color codes.
+ *
+ * Colors are found with a binary search over the positions, and interpolated per channel with fixed point math, so
+ * getting a color code does not allocate anything.  Unlike the lookup table of a read only ColorGradient, the colors
+ * are interpolated exactly for every value.  Values outside the gradient get the end colors, and NaN gets the last color.
+ */
+public final class ArrayColorGradient extends ColorFunctionBase {
+
+    private static final int FRACTION_BITS = 16;
+
+    private final double[] positions;
+    private final int[] colorCodes;
+
+    // One divided by the distance to the next stop, for each stop except the last
+    private final double[] inverseSpans;
+
+    /**
+     * Creates a snapshot of the current colors of a ColorGradient.
+     */
+    public ArrayColorGradient(ColorGradient source) {
+        notNull(source, "source");
+
+        final Map<Double, Color> colors = source.getColors();
+        positions = new double[colors.size()];
+        colorCodes = new int[colors.size()];
+        int i = 0;
+        for (Map.Entry<Double, Color> entry : colors.entrySet()) {
+            positions[i] = entry.getKey();
+            colorCodes[i] = entry.getValue().getRGB();
+            i++;
+        }
+
+        inverseSpans = calculateInverseSpans(positions);
+    }
+
+    /**
+     * @param positions positions of the stops, in strictly increasing order.
+     * @param colorCodes colors of the stops, in the same format as Color.getRGB().
+     */
+    public ArrayColorGradient(double[] positions, int[] colorCodes) {
+        notNull(positions, "positions");
+        notNull(colorCodes, "colorCodes");
+        if (positions.length != colorCodes.length) throw new IllegalArgumentException("There should be as many positions as colors, but there were " + positions.length + " positions and " + colorCodes.length + " colors.");
+        for (int i = 1; i < positions.length; i++) {
+            if (!(positions[i] > positions[i - 1])) throw new IllegalArgumentException("The positions should be in increasing order, but position " + i + " was " + positions[i] + " after " + positions[i - 1]);
+        }
+
+        this.positions = positions.clone();
+        this.colorCodes = colorCodes.clone();
+        inverseSpans = calculateInverseSpans(this.positions);
+    }
+
+    /**
+     * @return number of color stops in the gradient.
+     */
+    public int getStopCount() {
+        return positions.length;
+    }
+
+    /**
+     * @return position of the specified stop.
+     */
+    public double getPosition(int stop) {
+        return positions[stop];
+    }
+
+    /**
+     * @return color code of the specified stop.
+     */
+    public int getColorCode(int stop) {
+        return colorCodes[stop];
+    }
+
+    /**
+     * @return a copy of the stop positions, in increasing order.
+     */
+    public double[] getPositions() {
+        return positions.clone();
+    }
+
+    /**
+     * @return a copy of the stop color codes.
+     */
+    public int[] getColorCodes() {
+        return colorCodes.clone();
+    }
+
+    @Override public Color colorForValue(double value) {
+        return new Color(colorCodeForValue(value), true);
+    }
+
+    @Override public int colorCodeForValue(double value) {
+        final int last = positions.length - 1;
+        if (last < 0) return 0xFF000000;
+
+        if (value <= positions[0]) return colorCodes[0];
+        if (!(value < positions[last])) return colorCodes[last];
+
+        final int stop = findStop(value, 0, last);
+        return interpolate(stop, value);
+    }
+
+    @Override public void colorCodesForValues(double[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        final int last = positions.length - 1;
+        if (last < 1) {
+            fill(target, targetOffset, targetStride, count, last < 0 ? 0xFF000000 : colorCodes[0]);
+            return;
+        }
+
+        // Neighbouring values usually fall in the same segment, so check the previous segment before searching
+        int stop = 0;
+        for (int i = 0; i < count; i++) {
+            final double value = values[valueOffset];
+            if (value <= positions[0]) target[targetOffset] = colorCodes[0];
+            else if (!(value < positions[last])) target[targetOffset] = colorCodes[last];
+            else {
+                if (!(positions[stop] <= value && value < positions[stop + 1])) stop = findStop(value, 0, last);
+                target[targetOffset] = interpolate(stop, value);
+            }
+            valueOffset += valueStride;
+            targetOffset += targetStride;
+        }
+    }
+
+    @Override public void colorCodesForValues(float[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        final int last = positions.length - 1;
+        if (last < 1) {
+            fill(target, targetOffset, targetStride, count, last < 0 ? 0xFF000000 : colorCodes[0]);
+            return;
+        }
+
+        int stop = 0;
+        for (int i = 0; i < count; i++) {
+            final double value = values[valueOffset];
+            if (value <= positions[0]) target[targetOffset] = colorCodes[0];
+            else if (!(value < positions[last])) target[targetOffset] = colorCodes[last];
+            else {
+                if (!(positions[stop] <= value && value < positions[stop + 1])) stop = findStop(value, 0, last);
+                target[targetOffset] = interpolate(stop, value);
+            }
+            valueOffset += valueStride;
+            targetOffset += targetStride;
+        }
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ArrayColorGradient)) return false;
+
+        final ArrayColorGradient that = (ArrayColorGradient) o;
+        return Arrays.equals(positions, that.positions) && Arrays.equals(colorCodes, that.colorCodes);
+    }
+
+    @Override public int hashCode() {
+        return 31 * Arrays.hashCode(positions) + Arrays.hashCode(colorCodes);
+    }
+
+    /**
+     * @return index of the last stop at or before the value, searching between the low and high stops.
+     */
+    private int findStop(double value, int low, int high) {
+        while (high - low > 1) {
+            final int middle = (low + high) >>> 1;
+            if (positions[middle] <= value) low = middle;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return the interpolated color for a value between the specified stop and the next one.
+     */
+    private int interpolate(int stop, double value) {
+        return interpolate(value, positions[stop], inverseSpans[stop], colorCodes[stop], colorCodes[stop + 1]);
+    }
+
+    /**
+     * Interpolates between the colors of two stops.  Shared with ColorGradient, so that both give the same colors.
+     *
+     * @param position position of the first stop.
+     * @param inverseSpan one divided by the distance from the first stop to the second.
+     * @param a color code of the first stop.
+     * @param b color code of the second stop.
+     */
+    static int interpolate(double value, double position, double inverseSpan, int a, int b) {
+        final int t = (int) ((value - position) * inverseSpan * (1 << FRACTION_BITS));
+        return interpolate(a, b, t);
+    }
+
+    private static void fill(int[] target, int targetOffset, int targetStride, int count, int colorCode) {
+        for (int i = 0; i < count; i++) {
+            target[targetOffset] = colorCode;
+            targetOffset += targetStride;
+        }
+    }
+
+    /**
+     * @param t amount of the second color, as a fixed point number with FRACTION_BITS fractional bits.
+     */
+    private static int interpolate(int a, int b, int t) {
+        final int rounding = 1 << (FRACTION_BITS - 1);
+        final int alpha = (a >>> 24)        + ((((b >>> 24)        - (a >>> 24))        * t + rounding) >> FRACTION_BITS);
+        final int red   = (a >>> 16 & 0xFF) + ((((b >>> 16 & 0xFF) - (a >>> 16 & 0xFF)) * t + rounding) >> FRACTION_BITS);
+        final int green = (a >>> 8 & 0xFF)  + ((((b >>> 8 & 0xFF)  - (a >>> 8 & 0xFF))  * t + rounding) >> FRACTION_BITS);
+        final int blue  = (a & 0xFF)        + ((((b & 0xFF)        - (a & 0xFF))        * t + rounding) >> FRACTION_BITS);
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    private static double[] calculateInverseSpans(double[] positions) {
+        final double[] inverseSpans = new double[Math.max(positions.length - 1, 0)];
+        for (int i = 0; i < inverseSpans.length; i++) {
+            inverseSpans[i] = 1.0 / (positions[i + 1] - positions[i]);
+        }
+        return inverseSpans;
+    }
+}
@@ -19,4 +19,34 @@ public interface ColorFunction extends Mapper<Double, Color> {
      * color component, ordered in the same order as in Color.getRGB().
      */
     int colorCodeForValue(double value);
+
+    /**
+     * Gets the color codes for several values at once.  Faster than calling colorCodeForValue for each value.
+     *
+     * @param values array with the values.
+     * @param valueOffset index of the first value.
+     * @param valueStride distance between consecutive values in the values array, 1 for adjacent values.
+     * @param target array to write the color codes to, in the same format as returned by colorCodeForValue.
+     * @param targetOffset index to write the first color code to.
+     * @param targetStride distance between consecutive color codes in the target array, 1 for adjacent color codes.
+     * @param count number of values to get the color codes for.
+     */
+    void colorCodesForValues(double[] values, int valueOffset, int valueStride,
+                             int[] target, int targetOffset, int targetStride,
+                             int count);
+
+    /**
+     * Gets the color codes for several values at once.  Faster than calling colorCodeForValue for each value.
+     *
+     * @param values array with the values.
+     * @param valueOffset index of the first value.
+     * @param valueStride distance between consecutive values in the values array, 1 for adjacent values.
+     * @param target array to write the color codes to, in the same format as returned by colorCodeForValue.
+     * @param targetOffset index to write the first color code to.
+     * @param targetStride distance between consecutive color codes in the target array, 1 for adjacent color codes.
+     * @param count number of values to get the color codes for.
+     */
+    void colorCodesForValues(float[] values, int valueOffset, int valueStride,
+                             int[] target, int targetOffset, int targetStride,
+                             int count);
 }
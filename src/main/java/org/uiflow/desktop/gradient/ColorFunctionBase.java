@@ -2,8 +2,11 @@ package org.uiflow.desktop.gradient;
 
 import java.awt.*;
 
+import static org.flowutils.Check.notNull;
+
 /**
  * Base class for ColorFunctions.  Override either the colorForValue or colorCodeForValue (or both) methods.
+ * The batch methods call colorCodeForValue for each value, override them if a faster way is available.
  */
 public abstract class ColorFunctionBase implements ColorFunction {
 
@@ -15,7 +18,51 @@ public abstract class ColorFunctionBase implements ColorFunction {
         return colorForValue(value).getRGB();
     }
 
+    @Override public void colorCodesForValues(double[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        for (int i = 0; i < count; i++) {
+            target[targetOffset] = colorCodeForValue(values[valueOffset]);
+            valueOffset += valueStride;
+            targetOffset += targetStride;
+        }
+    }
+
+    @Override public void colorCodesForValues(float[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        for (int i = 0; i < count; i++) {
+            target[targetOffset] = colorCodeForValue(values[valueOffset]);
+            valueOffset += valueStride;
+            targetOffset += targetStride;
+        }
+    }
+
     @Override public Color convert(Double value) {
         return colorForValue(value);
     }
+
+    /**
+     * Checks that the parameters of a batch method are valid, and that all accessed indexes are inside the arrays.
+     */
+    protected static void checkBatchParameters(int valuesLength, int valueOffset, int valueStride,
+                                               int[] target, int targetOffset, int targetStride,
+                                               int count) {
+        notNull(target, "target");
+        if (count < 0) throw new IllegalArgumentException("The count should not be negative, but it was " + count);
+        if (valueStride <= 0 || targetStride <= 0) throw new IllegalArgumentException("The strides should be positive, but they were " + valueStride + " and " + targetStride);
+        if (count > 0) {
+            checkRange("values", valuesLength, valueOffset, valueStride, count);
+            checkRange("target", target.length, targetOffset, targetStride, count);
+        }
+    }
+
+    private static void checkRange(String name, int length, int offset, int stride, int count) {
+        final long last = offset + (long) stride * (count - 1);
+        if (offset < 0 || last >= length) throw new IllegalArgumentException("The " + name + " array of length " + length + " is too short for " + count + " values starting from index " + offset + " with stride " + stride);
+    }
 }
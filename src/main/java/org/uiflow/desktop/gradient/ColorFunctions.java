@@ -0,0 +1,62 @@
+package org.uiflow.desktop.gradient;
+
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Utilities for mapping large arrays of values to colors with a ColorFunction in parallel.
+ * The array is split into chunks that are passed to the batch methods of the color function on the default
+ * ParallelRange pool, so the color function must be thread safe, e.g. a read only ColorGradient.
+ */
+public final class ColorFunctions {
+
+    /**
+     * Smallest number of values to map in one chunk, smaller arrays are mapped in the calling thread.
+     */
+    public static final int MIN_VALUES_PER_CHUNK = 16 * 1024;
+
+    /**
+     * Gets the color codes for the values in parallel.  See ColorFunction.colorCodesForValues for the parameters.
+     */
+    public static void colorCodesForValuesParallel(final ColorFunction colorFunction,
+                                                   final double[] values, final int valueOffset, final int valueStride,
+                                                   final int[] target, final int targetOffset, final int targetStride,
+                                                   int count) {
+        notNull(colorFunction, "colorFunction");
+        notNull(values, "values");
+        ColorFunctionBase.checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        ParallelRange.forRange(0, count, MIN_VALUES_PER_CHUNK, new RangeTask() {
+            @Override public void process(int start, int end) {
+                colorFunction.colorCodesForValues(values, valueOffset + start * valueStride, valueStride,
+                                                  target, targetOffset + start * targetStride, targetStride,
+                                                  end - start);
+            }
+        });
+    }
+
+    /**
+     * Gets the color codes for the values in parallel.  See ColorFunction.colorCodesForValues for the parameters.
+     */
+    public static void colorCodesForValuesParallel(final ColorFunction colorFunction,
+                                                   final float[] values, final int valueOffset, final int valueStride,
+                                                   final int[] target, final int targetOffset, final int targetStride,
+                                                   int count) {
+        notNull(colorFunction, "colorFunction");
+        notNull(values, "values");
+        ColorFunctionBase.checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        ParallelRange.forRange(0, count, MIN_VALUES_PER_CHUNK, new RangeTask() {
+            @Override public void process(int start, int end) {
+                colorFunction.colorCodesForValues(values, valueOffset + start * valueStride, valueStride,
+                                                  target, targetOffset + start * targetStride, targetStride,
+                                                  end - start);
+            }
+        });
+    }
+
+    private ColorFunctions() {
+    }
+}
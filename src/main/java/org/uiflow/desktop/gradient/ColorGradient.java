@@ -1,6 +1,7 @@
 package org.uiflow.desktop.gradient;
 
 
+import org.flowutils.Check;
 import org.flowutils.MathUtils;
 
 import java.awt.*;
@@ -9,19 +10,43 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import static org.flowutils.Check.notNull;
-import static org.flowutils.MathUtils.map;
 import static org.flowutils.MathUtils.mix;
 import static org.uiflow.desktop.ColorUtils.mixColors;
 
 /**
  * Simple Swing color gradient.
+ *
+ * When the gradient is made read only, a lookup table with the color codes for evenly spaced values over the range of
+ * the gradient is created by default, and colorCodeForValue returns the closest entry from it without allocating
+ * anything.  The table is made large enough that its colors differ from the exact ones by at most one step per channel,
+ * or left out if the stops are spaced so unevenly that such a table would be too large.  Read only gradients without a
+ * lookup table use an ArrayColorGradient snapshot of their colors in colorCodeForValue, which interpolates exactly
+ * without allocating.  colorForValue and getColor always interpolate the exact color.
  */
 public class ColorGradient extends ColorFunctionBase {
 
+    /**
+     * Number of entries in the lookup table created by makeReadOnly().
+     */
+    public static final int DEFAULT_LOOKUP_TABLE_SIZE = 4096;
+
+    /**
+     * Largest lookup table created by makeReadOnly().  Gradients that would need a larger one interpolate exactly instead.
+     */
+    public static final int MAX_LOOKUP_TABLE_SIZE = 64 * 1024;
+
     private final TreeMap<Double, Color> colors = new TreeMap<Double, Color>();
 
     private boolean allowModification = true;
 
+    // Color codes for evenly spaced values from lookupStart to the end of the gradient, or null if not created
+    private int[] lookupTable = null;
+    private double lookupStart;
+    private double lookupScale;
+
+    // Snapshot of the colors, created when the gradient is made read only
+    private ArrayColorGradient arrayGradient = null;
+
     /**
      * @param colors initial colors in the gradient, spaced from 0 to 1.
      */
@@ -120,7 +145,23 @@ public class ColorGradient extends ColorFunctionBase {
      * Interpolated if between colors, but clamped to end colors if outside the gradient range.
      */
     public Color getColor(double value) {
-        return getColorMixed(value, 1, Color.white);
+        final Map.Entry<Double, Color> floor = colors.floorEntry(value);
+        final Map.Entry<Double, Color> ceiling = colors.ceilingEntry(value);
+
+        if (floor == null && ceiling == null) return Color.black;
+        else if (floor == null) return ceiling.getValue();
+        else if (ceiling == null || value == floor.getKey()) return floor.getValue();
+        else if (value == ceiling.getKey()) return ceiling.getValue();
+        else {
+            // Interpolate in the same way as ArrayColorGradient, so that the exact colors are the same everywhere
+            final double position = floor.getKey();
+            return new Color(ArrayColorGradient.interpolate(value,
+                                                            position,
+                                                            1.0 / (ceiling.getKey() - position),
+                                                            floor.getValue().getRGB(),
+                                                            ceiling.getValue().getRGB()),
+                             true);
+        }
     }
 
     /**
@@ -150,13 +191,95 @@ public class ColorGradient extends ColorFunctionBase {
 
     /**
      * Makes this ColorGradient immutable.  Any modification operations will throw an exception after this.
+     * Creates a lookup table for colorCodeForValue with at least DEFAULT_LOOKUP_TABLE_SIZE entries, and enough entries
+     * that the channels of its colors are at most one off from the exact colors.  If that would take more than
+     * MAX_LOOKUP_TABLE_SIZE entries, no lookup table is created and colorCodeForValue interpolates the exact color.
      * @return this gradient.
      */
     public ColorGradient makeReadOnly() {
+        return makeReadOnly(accurateLookupTableSize());
+    }
+
+    /**
+     * Makes this ColorGradient immutable.  Any modification operations will throw an exception after this.
+     * @param lookupTableSize number of entries in the lookup table used by colorCodeForValue, spread evenly over
+     *                        the range of the gradient.  Larger tables are more exact but use more memory and cache.
+     *                        Colors in short segments between unevenly spaced stops may be lost with small tables.
+     *                        Zero to not use a lookup table, in which case colorCodeForValue interpolates the exact color.
+     * @return this gradient.
+     */
+    public ColorGradient makeReadOnly(int lookupTableSize) {
+        Check.positiveOrZero(lookupTableSize, "lookupTableSize");
+
         allowModification = false;
+        arrayGradient = new ArrayColorGradient(this);
+
+        if (lookupTableSize > 0 && !colors.isEmpty()) {
+            final double start = colors.firstKey();
+            final double end = colors.lastKey();
+            final int size = start == end ? 1 : Math.max(lookupTableSize, 2);
+
+            final int[] table = new int[size];
+            for (int i = 0; i < size; i++) {
+                final double value = size == 1 ? start : mix((double) i / (size - 1), start, end);
+                table[i] = getColor(value).getRGB();
+            }
+
+            lookupStart = start;
+            lookupScale = size == 1 ? 0 : (size - 1) / (end - start);
+            lookupTable = table;
+        }
+        else {
+            lookupTable = null;
+        }
+
         return this;
     }
 
+    /**
+     * @return the smallest lookup table size, but at least DEFAULT_LOOKUP_TABLE_SIZE, for which no color channel
+     *         changes by more than half a step between the value of an entry and the values it is used for,
+     *         or zero if that would take more than MAX_LOOKUP_TABLE_SIZE entries.
+     */
+    private int accurateLookupTableSize() {
+        if (colors.size() < 2) return DEFAULT_LOOKUP_TABLE_SIZE;
+
+        // The steepest change of any channel, in steps per unit
+        double maxSlope = 0;
+        Map.Entry<Double, Color> previous = null;
+        for (Map.Entry<Double, Color> entry : colors.entrySet()) {
+            if (previous != null) {
+                final Color a = previous.getValue();
+                final Color b = entry.getValue();
+                final int delta = Math.max(Math.max(Math.abs(b.getRed() - a.getRed()), Math.abs(b.getGreen() - a.getGreen())),
+                                           Math.max(Math.abs(b.getBlue() - a.getBlue()), Math.abs(b.getAlpha() - a.getAlpha())));
+                maxSlope = Math.max(maxSlope, delta / (entry.getKey() - previous.getKey()));
+            }
+            previous = entry;
+        }
+
+        // Entries are used for values up to half the entry spacing away, where the channels change by at most half a step
+        final double neededSize = Math.ceil((colors.lastKey() - colors.firstKey()) * maxSlope) + 1;
+        if (neededSize > MAX_LOOKUP_TABLE_SIZE) return 0;
+        else return Math.max(DEFAULT_LOOKUP_TABLE_SIZE, (int) neededSize);
+    }
+
+    /**
+     * @return an immutable array based snapshot of the current colors of this gradient.
+     *         For read only gradients the same snapshot is returned each time.
+     */
+    public ArrayColorGradient toArrayGradient() {
+        if (arrayGradient != null) return arrayGradient;
+        else return new ArrayColorGradient(this);
+    }
+
+    /**
+     * @return number of entries in the lookup table used by colorCodeForValue, or zero if no lookup table is used.
+     */
+    public int getLookupTableSize() {
+        return lookupTable == null ? 0 : lookupTable.length;
+    }
+
     /**
      * @param value point in gradient to get color from
      * @param baseColor a base color to mix the gradient color with.
@@ -164,35 +287,65 @@ public class ColorGradient extends ColorFunctionBase {
      * @return the color at the specified point in the gradient, mixed with a base color.
      */
     public Color getColorMixed(double value, double mixAmount, Color baseColor) {
-        final Map.Entry<Double, Color> floor = colors.floorEntry(value);
-        final Map.Entry<Double, Color> ceiling = colors.ceilingEntry(value);
+        return mixColors(mixAmount, baseColor, getColor(value));
+    }
 
-        if (floor == null && ceiling == null) return mixColors(mixAmount, baseColor, Color.black);
-        else if (floor == null) return mixColors(mixAmount, baseColor, ceiling.getValue());
-        else if (ceiling == null) return mixColors(mixAmount, baseColor, floor.getValue());
-        else {
-            if (value == floor.getKey()) return mixColors(mixAmount, baseColor, floor.getValue());
-            else if (value == ceiling.getKey()) return mixColors(mixAmount, baseColor, ceiling.getValue());
-            else {
-                double t = map(value, floor.getKey(), ceiling.getKey(), 0, 1);
-                final Color fCol = floor.getValue();
-                final Color cCol = ceiling.getValue();
-                int r = mixComponent(mixAmount, t, baseColor.getRed(),   fCol.getRed(),   cCol.getRed());
-                int g = mixComponent(mixAmount, t, baseColor.getGreen(), fCol.getGreen(), cCol.getGreen());
-                int b = mixComponent(mixAmount, t, baseColor.getBlue(),  fCol.getBlue(),  cCol.getBlue());
-                int a = mixComponent(mixAmount, t, baseColor.getAlpha(), fCol.getAlpha(), cCol.getAlpha());
-                return new Color(r, g, b, a);
-            }
+    @Override public Color colorForValue(double value) {
+        return getColor(value);
+    }
+
+    @Override public int colorCodeForValue(double value) {
+        final int[] table = lookupTable;
+        if (table == null) {
+            if (arrayGradient != null) return arrayGradient.colorCodeForValue(value);
+            else return getColor(value).getRGB();
         }
 
+        return lookup(table, value);
     }
 
-    @Override public Color colorForValue(double value) {
-        return getColor(value);
+    @Override public void colorCodesForValues(double[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        final int[] table = lookupTable;
+        if (table == null) {
+            if (arrayGradient != null) arrayGradient.colorCodesForValues(values, valueOffset, valueStride, target, targetOffset, targetStride, count);
+            else super.colorCodesForValues(values, valueOffset, valueStride, target, targetOffset, targetStride, count);
+            return;
+        }
+
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+        for (int i = 0; i < count; i++) {
+            target[targetOffset] = lookup(table, values[valueOffset]);
+            valueOffset += valueStride;
+            targetOffset += targetStride;
+        }
+    }
+
+    @Override public void colorCodesForValues(float[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        final int[] table = lookupTable;
+        if (table == null) {
+            if (arrayGradient != null) arrayGradient.colorCodesForValues(values, valueOffset, valueStride, target, targetOffset, targetStride, count);
+            else super.colorCodesForValues(values, valueOffset, valueStride, target, targetOffset, targetStride, count);
+            return;
+        }
+
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+        for (int i = 0; i < count; i++) {
+            target[targetOffset] = lookup(table, values[valueOffset]);
+            valueOffset += valueStride;
+            targetOffset += targetStride;
+        }
     }
 
-    private int mixComponent(double colorAmount, double t, final int base, final int floorComp, final int ceilingComp) {
-        return (int) mix(colorAmount, base, mix(t, floorComp, ceilingComp));
+    private int lookup(int[] table, double value) {
+        // Values outside the gradient get the end colors, NaN gets the last color like in getColor
+        final double position = (value - lookupStart) * lookupScale + 0.5;
+        if (position < 1) return table[0];
+        else if (position >= table.length || position != position) return table[table.length - 1];
+        else return table[(int) position];
     }
 
     private void checkModificationAllowed() {
@@ -5,6 +5,7 @@ import java.awt.*;
 
 /**
  * Utility class with some common color gradients.
+ * The gradients are read only, and interpolate colors exactly using array based stops instead of a lookup table.
  */
 public final class ColorGradients {
 
@@ -20,7 +21,7 @@ public final class ColorGradients {
             new Color(0, 60, 255),
             new Color(0, 0, 255),
             new Color(150, 0, 230)
-    ).makeReadOnly();
+    ).makeReadOnly(0);
 
     public static final ColorGradient BLUERED = new ColorGradient(
             new Color(0, 0, 255),
@@ -28,12 +29,12 @@ public final class ColorGradients {
             new Color(220, 220, 220),
             new Color(255, 160, 80),
             new Color(255, 0, 0)
-    ).makeReadOnly();
+    ).makeReadOnly(0);
 
     public static final ColorGradient GREYSCALE = new ColorGradient(
             new Color(0, 0, 0),
             new Color(255, 255, 255)
-    ).makeReadOnly();
+    ).makeReadOnly(0);
 
     public static final ColorGradient WARM_TO_COLD = new ColorGradient(
             new Color(255, 220, 0),
@@ -43,7 +44,7 @@ public final class ColorGradients {
             new Color(150, 0, 160),
             new Color(100, 0, 200),
             new Color(50, 0, 230)
-    ).makeReadOnly();
+    ).makeReadOnly(0);
 
     public static final ColorGradient GREEN_TO_RED = new ColorGradient(
             new Color(0, 220, 0),
@@ -51,7 +52,7 @@ public final class ColorGradients {
             new Color(250, 230, 0),
             new Color(245, 170, 0),
             new Color(240, 0, 0)
-    ).makeReadOnly();
+    ).makeReadOnly(0);
 
     public static final ColorGradient COMPUTER_COLORS = new ColorGradient(
             new Color(0, 0, 0),
@@ -62,7 +63,7 @@ public final class ColorGradients {
             new Color(0, 0, 255),
             new Color(255, 0, 255),
             new Color(255, 255, 255)
-    ).makeReadOnly();
+    ).makeReadOnly(0);
 
     private ColorGradients() {
     }
@@ -3,13 +3,16 @@ package org.uiflow.desktop.gradient;
 import org.flowutils.Check;
 import org.flowutils.mapping.Mapper;
 
-import java.awt.Color;import java.lang.Number;import java.lang.Override;
+import java.awt.Color;
+import java.util.Arrays;
 
 import static org.flowutils.Check.notNull;
 
 /**
  * Converts source values to a color using some ColorFunction (e.g. a ColorGradient).
  * Optionally maps the source value to a more suitable range for the color function first, using scaling and offsets.
+ * Use colorCodeFor or the batch colorCodesFor methods in per pixel loops, they work on primitives and do not allocate.
+ * Null and NaN source values get the default color in all methods.
  */
 // NOTE: Somewhat superfluous now that ColorFunction implements Mapper<Double, Color>
 public final class ColorMapper<S extends Number> implements Mapper<S, Color> {
@@ -27,6 +30,7 @@ public final class ColorMapper<S extends Number> implements Mapper<S, Color> {
     private double postOffset = DEFAULT_PRE_OFFSET;
 
     private Color defaultColor = DEFAULT_COLOR;
+    private int defaultColorCode = DEFAULT_COLOR.getRGB();
 
     /**
      * Creates a new ColorValueConverter without any ColorFunction.  All outputs will be the default color (dark gray).
@@ -145,6 +149,14 @@ public final class ColorMapper<S extends Number> implements Mapper<S, Color> {
         notNull(defaultColor, "defaultColor");
 
         this.defaultColor = defaultColor;
+        defaultColorCode = defaultColor.getRGB();
+    }
+
+    /**
+     * @return the default color as a color code, in the same format as Color.getRGB().
+     */
+    public int getDefaultColorCode() {
+        return defaultColorCode;
     }
 
     /**
@@ -208,11 +220,109 @@ public final class ColorMapper<S extends Number> implements Mapper<S, Color> {
         this.postOffset = postOffset;
     }
 
+    /**
+     * @return the color for the source value.  The default color if the value is null or NaN, or there is no color function.
+     */
     @Override public Color convert(S sourceValue) {
-        if (colorFunction == null || sourceValue != null) {
-            return colorFunction.colorForValue((sourceValue.doubleValue() + preOffset) * scale + postOffset);
-        } else {
-            return defaultColor;
+        if (colorFunction != null && sourceValue != null) {
+            final double value = sourceValue.doubleValue();
+            if (value == value) return colorFunction.colorForValue(mapValue(value));
+        }
+
+        return defaultColor;
+    }
+
+    /**
+     * @return the color code for the source value, in the same format as Color.getRGB().
+     *         The default color if the value is NaN or there is no color function.
+     */
+    public int colorCodeFor(double sourceValue) {
+        if (colorFunction == null || sourceValue != sourceValue) return defaultColorCode;
+        else return colorFunction.colorCodeForValue(mapValue(sourceValue));
+    }
+
+    /**
+     * Gets the color codes for several source values at once, without allocating.
+     * NaN values get the default color code.  See ColorFunction.colorCodesForValues for the parameters.
+     */
+    public void colorCodesFor(double[] values, int valueOffset, int valueStride,
+                              int[] target, int targetOffset, int targetStride,
+                              int count) {
+        ColorFunctionBase.checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        final ColorFunction function = colorFunction;
+        if (function == null) {
+            fillDefault(target, targetOffset, targetStride, count);
+        }
+        else if (isIdentityMapping()) {
+            // The values can be passed to the color function as is, the NaN values are fixed afterwards
+            function.colorCodesForValues(values, valueOffset, valueStride, target, targetOffset, targetStride, count);
+            for (int i = 0; i < count; i++) {
+                final double value = values[valueOffset];
+                if (value != value) target[targetOffset] = defaultColorCode;
+                valueOffset += valueStride;
+                targetOffset += targetStride;
+            }
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                final double value = values[valueOffset];
+                target[targetOffset] = value != value ? defaultColorCode : function.colorCodeForValue(mapValue(value));
+                valueOffset += valueStride;
+                targetOffset += targetStride;
+            }
+        }
+    }
+
+    /**
+     * Gets the color codes for several source values at once, without allocating.
+     * NaN values get the default color code.  See ColorFunction.colorCodesForValues for the parameters.
+     */
+    public void colorCodesFor(float[] values, int valueOffset, int valueStride,
+                              int[] target, int targetOffset, int targetStride,
+                              int count) {
+        ColorFunctionBase.checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+
+        final ColorFunction function = colorFunction;
+        if (function == null) {
+            fillDefault(target, targetOffset, targetStride, count);
+        }
+        else if (isIdentityMapping()) {
+            function.colorCodesForValues(values, valueOffset, valueStride, target, targetOffset, targetStride, count);
+            for (int i = 0; i < count; i++) {
+                final float value = values[valueOffset];
+                if (value != value) target[targetOffset] = defaultColorCode;
+                valueOffset += valueStride;
+                targetOffset += targetStride;
+            }
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                final float value = values[valueOffset];
+                target[targetOffset] = value != value ? defaultColorCode : function.colorCodeForValue(mapValue(value));
+                valueOffset += valueStride;
+                targetOffset += targetStride;
+            }
+        }
+    }
+
+    private double mapValue(double sourceValue) {
+        return (sourceValue + preOffset) * scale + postOffset;
+    }
+
+    private boolean isIdentityMapping() {
+        return preOffset == 0 && scale == 1 && postOffset == 0;
+    }
+
+    private void fillDefault(int[] target, int targetOffset, int targetStride, int count) {
+        if (targetStride == 1) {
+            Arrays.fill(target, targetOffset, targetOffset + count, defaultColorCode);
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                target[targetOffset] = defaultColorCode;
+                targetOffset += targetStride;
+            }
         }
     }
 }
@@ -2,6 +2,7 @@ package org.uiflow.desktop.gradient;
 
 
 import java.awt.*;
+import java.util.Arrays;
 
 import static org.flowutils.Check.notNull;
 
@@ -69,4 +70,30 @@ public final class SolidColorFunction extends ColorFunctionBase {
     @Override public int colorCodeForValue(double value) {
         return colorCode;
     }
+
+    @Override public void colorCodesForValues(double[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+        fill(target, targetOffset, targetStride, count);
+    }
+
+    @Override public void colorCodesForValues(float[] values, int valueOffset, int valueStride,
+                                              int[] target, int targetOffset, int targetStride,
+                                              int count) {
+        checkBatchParameters(values.length, valueOffset, valueStride, target, targetOffset, targetStride, count);
+        fill(target, targetOffset, targetStride, count);
+    }
+
+    private void fill(int[] target, int targetOffset, int targetStride, int count) {
+        if (targetStride == 1) {
+            Arrays.fill(target, targetOffset, targetOffset + count, colorCode);
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                target[targetOffset] = colorCode;
+                targetOffset += targetStride;
+            }
+        }
+    }
 }
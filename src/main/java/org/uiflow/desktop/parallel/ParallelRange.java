@@ -0,0 +1,120 @@
+package org.uiflow.desktop.parallel;
+
+import org.flowutils.Check;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Utility for splitting a range of indexes (e.g. the rows of an image) into bands and processing them in parallel
+ * on a ForkJoinPool.
+ */
+public final class ParallelRange {
+
+    /**
+     * Number of chunks to aim for per available thread, to even out the load if some chunks are slower than others.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static ForkJoinPool defaultPool = null;
+
+    /**
+     * @return a shared ForkJoinPool with one thread per available processor, created when first requested.
+     */
+    public static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+
+        return defaultPool;
+    }
+
+    /**
+     * Processes the specified range in parallel using the default pool.
+     * Returns when the whole range has been processed.
+     *
+     * @param start first index to process.
+     * @param end index after the last index to process.
+     * @param minChunkSize smallest number of indexes to hand to the task in one call.
+     *                     Ranges smaller than this are processed directly in the calling thread.
+     * @param task task to process the range with.  Must be thread safe.
+     */
+    public static void forRange(int start, int end, int minChunkSize, RangeTask task) {
+        forRange(null, start, end, minChunkSize, task);
+    }
+
+    /**
+     * Processes the specified range in parallel.
+     * Returns when the whole range has been processed.
+     * When called from a worker thread of the pool, the work is forked from the calling task, otherwise the calling
+     * thread (even if it is a worker of some other pool) waits while the work is done in the specified pool.
+     *
+     * @param pool pool to run the task on, or null to use the default pool.
+     * @param start first index to process.
+     * @param end index after the last index to process.
+     * @param minChunkSize smallest number of indexes to hand to the task in one call.
+     *                     Ranges smaller than this are processed directly in the calling thread.
+     * @param task task to process the range with.  Must be thread safe.
+     */
+    public static void forRange(ForkJoinPool pool, int start, int end, int minChunkSize, RangeTask task) {
+        notNull(task, "task");
+        Check.positive(minChunkSize, "minChunkSize");
+        if (end <= start) return;
+
+        if (pool == null) pool = getDefaultPool();
+
+        final int length = end - start;
+        final int parallelism = pool.getParallelism();
+        if (length <= minChunkSize || parallelism <= 1) {
+            // Not worth splitting up
+            task.process(start, end);
+        }
+        else {
+            // Aim for a few chunks per thread, but not smaller than the minimum chunk size
+            final int chunkSize = Math.max(minChunkSize, (length + parallelism * CHUNKS_PER_THREAD - 1) / (parallelism * CHUNKS_PER_THREAD));
+
+            final RangeAction action = new RangeAction(task, start, end, chunkSize);
+            if (ForkJoinTask.getPool() == pool) {
+                // Already running inside the pool, so just fork the work from here
+                action.invoke();
+            }
+            else {
+                pool.invoke(action);
+            }
+        }
+    }
+
+    /**
+     * Splits its range in halves until it is small enough to process directly.
+     */
+    private static final class RangeAction extends RecursiveAction {
+        private final RangeTask task;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        private RangeAction(RangeTask task, int start, int end, int chunkSize) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override protected void compute() {
+            if (end - start <= chunkSize) {
+                task.process(start, end);
+            }
+            else {
+                final int middle = start + (end - start) / 2;
+                invokeAll(new RangeAction(task, start, middle, chunkSize),
+                          new RangeAction(task, middle, end, chunkSize));
+            }
+        }
+    }
+
+    private ParallelRange() {
+    }
+}
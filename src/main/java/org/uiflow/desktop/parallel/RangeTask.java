@@ -0,0 +1,18 @@
+package org.uiflow.desktop.parallel;
+
+/**
+ * A piece of work that processes a continuous range of indexes, e.g. rows in an image.
+ * Used with ParallelRange to split work over several threads.
+ */
+public interface RangeTask {
+
+    /**
+     * Processes the indexes from start (inclusive) to end (exclusive).
+     * May be called concurrently from several threads for non-overlapping ranges.
+     *
+     * @param start first index to process.
+     * @param end index after the last index to process.
+     */
+    void process(int start, int end);
+
+}
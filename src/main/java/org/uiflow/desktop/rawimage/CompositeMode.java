@@ -0,0 +1,96 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * Porter-Duff rules for combining a layer (the source) with the layers below it (the destination).
+ *
+ * Each rule multiplies the premultiplied source color with a source factor and the premultiplied destination color
+ * with a destination factor, and adds the results.  The factors are zero, one, the alpha of the other color,
+ * or one minus the alpha of the other color.
+ */
+public enum CompositeMode {
+
+    /** Clears the destination. */
+    CLEAR(Factor.ZERO, Factor.ZERO),
+
+    /** Replaces the destination with the source. */
+    SOURCE(Factor.ONE, Factor.ZERO),
+
+    /** Keeps the destination. */
+    DESTINATION(Factor.ZERO, Factor.ONE),
+
+    /** Draws the source over the destination.  The usual mode for layers. */
+    SOURCE_OVER(Factor.ONE, Factor.ONE_MINUS_ALPHA),
+
+    /** Draws the source behind the destination. */
+    DESTINATION_OVER(Factor.ONE_MINUS_ALPHA, Factor.ONE),
+
+    /** Keeps the part of the source that is inside the destination. */
+    SOURCE_IN(Factor.ALPHA, Factor.ZERO),
+
+    /** Keeps the part of the destination that is inside the source. */
+    DESTINATION_IN(Factor.ZERO, Factor.ALPHA),
+
+    /** Keeps the part of the source that is outside the destination. */
+    SOURCE_OUT(Factor.ONE_MINUS_ALPHA, Factor.ZERO),
+
+    /** Keeps the part of the destination that is outside the source. */
+    DESTINATION_OUT(Factor.ZERO, Factor.ONE_MINUS_ALPHA),
+
+    /** Draws the part of the source that is inside the destination over the destination. */
+    SOURCE_ATOP(Factor.ALPHA, Factor.ONE_MINUS_ALPHA),
+
+    /** Draws the part of the destination that is inside the source over the source. */
+    DESTINATION_ATOP(Factor.ONE_MINUS_ALPHA, Factor.ALPHA),
+
+    /** Keeps the parts of the source and destination that do not overlap. */
+    XOR(Factor.ONE_MINUS_ALPHA, Factor.ONE_MINUS_ALPHA),
+
+    /** Adds the source and destination together, clamping the result. */
+    PLUS(Factor.ONE, Factor.ONE);
+
+    /**
+     * The factor that a color is multiplied with, given in terms of the alpha of the other color.
+     */
+    enum Factor {
+        ZERO,
+        ONE,
+        ALPHA,
+        ONE_MINUS_ALPHA;
+
+        /**
+         * @param otherAlpha alpha of the other color, 0..255.
+         * @return the factor, 0..255.
+         */
+        int apply(int otherAlpha) {
+            switch (this) {
+                case ZERO: return 0;
+                case ONE: return 255;
+                case ALPHA: return otherAlpha;
+                default: return 255 - otherAlpha;
+            }
+        }
+    }
+
+    private final Factor sourceFactor;
+    private final Factor destinationFactor;
+
+    CompositeMode(Factor sourceFactor, Factor destinationFactor) {
+        this.sourceFactor = sourceFactor;
+        this.destinationFactor = destinationFactor;
+    }
+
+    /**
+     * @return true if a transparent source changes the destination, in which case a layer affects the area outside its image.
+     */
+    boolean affectsDestinationOutsideSource() {
+        return destinationFactor == Factor.ZERO || destinationFactor == Factor.ALPHA;
+    }
+
+    Factor getSourceFactor() {
+        return sourceFactor;
+    }
+
+    Factor getDestinationFactor() {
+        return destinationFactor;
+    }
+}
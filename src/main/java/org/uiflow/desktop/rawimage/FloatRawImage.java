@@ -0,0 +1,123 @@
+package org.uiflow.desktop.rawimage;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+/**
+ * Image with a float value for each of the red, green and blue channels of each pixel, stored in separate arrays.
+ * Values are not limited to the 0..1 range, so renderers can store physical quantities such as light intensity,
+ * and a ToneMapper can then convert them to a RawImage for display.
+ *
+ * Changes made with the methods of this class are tracked with a change count, so that tone mapping can be skipped
+ * when nothing has changed.  Call markChanged after editing the channel arrays directly.
+ */
+public final class FloatRawImage {
+
+    private final int width;
+    private final int height;
+    private final float[] red;
+    private final float[] green;
+    private final float[] blue;
+
+    private int changeCount = 0;
+
+    /**
+     * Creates a new image with all values zero.
+     */
+    public FloatRawImage(int width, int height) {
+        Check.positive(width, "width");
+        Check.positive(height, "height");
+
+        this.width = width;
+        this.height = height;
+
+        final int pixelCount = width * height;
+        red = new float[pixelCount];
+        green = new float[pixelCount];
+        blue = new float[pixelCount];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the red channel values, row by row.  Call markChanged after editing them.
+     */
+    public float[] getRedChannel() {
+        return red;
+    }
+
+    /**
+     * @return the green channel values, row by row.  Call markChanged after editing them.
+     */
+    public float[] getGreenChannel() {
+        return green;
+    }
+
+    /**
+     * @return the blue channel values, row by row.  Call markChanged after editing them.
+     */
+    public float[] getBlueChannel() {
+        return blue;
+    }
+
+    public float getRed(int x, int y) {
+        return red[index(x, y)];
+    }
+
+    public float getGreen(int x, int y) {
+        return green[index(x, y)];
+    }
+
+    public float getBlue(int x, int y) {
+        return blue[index(x, y)];
+    }
+
+    /**
+     * Sets the channel values of a pixel.  Throws exception if coordinates are out of range.
+     */
+    public void setPixel(int x, int y, float r, float g, float b) {
+        final int index = index(x, y);
+        red[index] = r;
+        green[index] = g;
+        blue[index] = b;
+        changeCount++;
+    }
+
+    /**
+     * Sets all pixels to the specified channel values.
+     */
+    public void clear(float r, float g, float b) {
+        Arrays.fill(red, r);
+        Arrays.fill(green, g);
+        Arrays.fill(blue, b);
+        changeCount++;
+    }
+
+    /**
+     * Notes that the channel arrays were edited directly.
+     */
+    public void markChanged() {
+        changeCount++;
+    }
+
+    /**
+     * @return a number that changes whenever the image is changed.
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height) throw new IllegalArgumentException("The coordinate ("+x+", "+y+") is out of bounds, the image width is "+width+", and height is "+height+".");
+
+        return x + y * width;
+    }
+}
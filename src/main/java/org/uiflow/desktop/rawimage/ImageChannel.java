@@ -0,0 +1,16 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * A channel of the color data in a RawImage, with values from 0 to 255.
+ */
+public enum ImageChannel {
+    RED,
+    GREEN,
+    BLUE,
+    ALPHA,
+
+    /**
+     * Perceived brightness, calculated from the red, green and blue channels with the Rec. 709 weights.
+     */
+    LUMINANCE
+}
@@ -0,0 +1,24 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * A RawImageRenderer that can render an image a bit at a time, stopping when a time budget is spent and continuing
+ * where it left off on the next call.  Allows slow renderers to run on the event dispatch thread without blocking it.
+ */
+public interface IncrementalRawImageRenderer extends RawImageRenderer {
+
+    /**
+     * Continues rendering the target where the previous call stopped, or starts a new rendering of it if the previous
+     * rendering was completed, restarted, or was for another target.
+     * Renders at least a small part of the image even if the budget is very small.
+     *
+     * @param target the target to render to.  The rendered parts are marked dirty and flushed.
+     * @param timeBudgetNanos approximate number of nanoseconds to spend rendering.
+     * @return true if the rendering of the image was completed, false if more calls are needed.
+     */
+    boolean renderIncrementally(RawImage target, long timeBudgetNanos);
+
+    /**
+     * Makes the next renderIncrementally call start from the beginning of the image.
+     */
+    void restartIncrementalRendering();
+}
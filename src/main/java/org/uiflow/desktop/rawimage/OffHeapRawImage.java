@@ -0,0 +1,255 @@
+package org.uiflow.desktop.rawimage;
+
+import org.flowutils.Check;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Very large image, with the color data stored outside the Java heap, either in direct memory or in a memory mapped file.
+ * Uses the same color format as RawImage, but can hold more than 2^31 pixels.
+ *
+ * The data is split into bands of rows, each stored in its own buffer, as a single buffer is limited to 2 GB.
+ * Use a RawImageViewport to show the visible part of the image.
+ */
+public final class OffHeapRawImage implements RawImageSource, Closeable {
+
+    /**
+     * Largest number of bytes to store in one buffer.
+     */
+    private static final long MAX_BYTES_PER_BAND = 1L << 30;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int width;
+    private final int height;
+    private final int rowsPerBand;
+    private final IntBuffer[] bands;
+    private final MappedByteBuffer[] mappedBuffers;
+    private final FileChannel fileChannel;
+
+    /**
+     * Creates a new black image with the color data stored in direct memory outside the Java heap.
+     * The maximum amount of direct memory can be set with the -XX:MaxDirectMemorySize JVM option.
+     */
+    public static OffHeapRawImage createDirect(int width, int height) {
+        checkSize(width, height);
+
+        final int rowsPerBand = calculateRowsPerBand(width, height);
+        final IntBuffer[] bands = new IntBuffer[(height + rowsPerBand - 1) / rowsPerBand];
+        for (int i = 0; i < bands.length; i++) {
+            final int bandBytes = bandRows(i, rowsPerBand, height) * width * BYTES_PER_PIXEL;
+            bands[i] = ByteBuffer.allocateDirect(bandBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        final OffHeapRawImage image = new OffHeapRawImage(width, height, rowsPerBand, bands, null, null);
+        image.clearToColor(0xFF000000);
+        return image;
+    }
+
+    /**
+     * Creates an image with the color data stored in a memory mapped file.
+     * The operating system pages the data in and out as it is accessed, so the image can be larger than the available memory.
+     * If the file already exists, its data is used as the initial color data of the image, otherwise the image is black.
+     * Call close when the image is no longer needed.
+     *
+     * @param file file to store the color data in.  Created if it does not exist, and resized to fit the image if needed.
+     */
+    public static OffHeapRawImage createMapped(File file, int width, int height) throws IOException {
+        notNull(file, "file");
+        checkSize(width, height);
+
+        final boolean newFile = !file.exists() || file.length() == 0;
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        final FileChannel channel = randomAccessFile.getChannel();
+        try {
+            randomAccessFile.setLength((long) width * height * BYTES_PER_PIXEL);
+
+            final int rowsPerBand = calculateRowsPerBand(width, height);
+            final IntBuffer[] bands = new IntBuffer[(height + rowsPerBand - 1) / rowsPerBand];
+            final MappedByteBuffer[] mappedBuffers = new MappedByteBuffer[bands.length];
+            long position = 0;
+            for (int i = 0; i < bands.length; i++) {
+                final long bandBytes = (long) bandRows(i, rowsPerBand, height) * width * BYTES_PER_PIXEL;
+                mappedBuffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, bandBytes);
+                bands[i] = mappedBuffers[i].order(ByteOrder.nativeOrder()).asIntBuffer();
+                position += bandBytes;
+            }
+
+            final OffHeapRawImage image = new OffHeapRawImage(width, height, rowsPerBand, bands, mappedBuffers, channel);
+            if (newFile) image.clearToColor(0xFF000000);
+            return image;
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private OffHeapRawImage(int width, int height, int rowsPerBand, IntBuffer[] bands, MappedByteBuffer[] mappedBuffers, FileChannel fileChannel) {
+        this.width = width;
+        this.height = height;
+        this.rowsPerBand = rowsPerBand;
+        this.bands = bands;
+        this.mappedBuffers = mappedBuffers;
+        this.fileChannel = fileChannel;
+    }
+
+    @Override public int getWidth() {
+        return width;
+    }
+
+    @Override public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of pixels in the image.
+     */
+    public long getPixelCount() {
+        return (long) width * height;
+    }
+
+    /**
+     * @return the color RGBA value at the specified pixel.  Throws exception if out of range.
+     */
+    public int getPixel(int x, int y) {
+        checkCoordinate(x, y);
+
+        return bands[y / rowsPerBand].get((y % rowsPerBand) * width + x);
+    }
+
+    /**
+     * Sets the color RGBA value at the specified pixel.  Throws exception if coordinates are out of range.
+     */
+    public void setPixel(int x, int y, int colorCode) {
+        checkCoordinate(x, y);
+
+        bands[y / rowsPerBand].put((y % rowsPerBand) * width + x, colorCode);
+    }
+
+    /**
+     * Clears the whole image to the specified color, indicated by a 32 color code with a component for each color channel.
+     */
+    public void clearToColor(int colorCode) {
+        fillRect(0, 0, width, height, colorCode);
+    }
+
+    /**
+     * Renders a filled rectangle on the image.  The parts of the rectangle outside the image are ignored.
+     */
+    public void fillRect(int x, int y, int w, int h, int colorCode) {
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = (int) Math.min((long) x + w, width);
+        final int y2 = (int) Math.min((long) y + h, height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        for (int yp = y1; yp < y2; yp++) {
+            final IntBuffer band = bands[yp / rowsPerBand];
+            final int rowStart = (yp % rowsPerBand) * width;
+            for (int i = rowStart + x1; i < rowStart + x2; i++) {
+                band.put(i, colorCode);
+            }
+        }
+    }
+
+    /**
+     * Copies color data from a RawImage into this image.
+     * @param source image to copy from.
+     * @param x left edge in this image to copy the source to.
+     * @param y top edge in this image to copy the source to.
+     */
+    public void copyFrom(RawImage source, int x, int y) {
+        notNull(source, "source");
+
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = (int) Math.min((long) x + source.getWidth(), width);
+        final int y2 = (int) Math.min((long) y + source.getHeight(), height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        final int[] sourceData = source.getUntrackedBuffer();
+        final int sourceWidth = source.getWidth();
+        for (int yp = y1; yp < y2; yp++) {
+            writeRow(yp, x1, sourceData, (yp - y) * sourceWidth + (x1 - x), x2 - x1);
+        }
+    }
+
+    @Override public void copyRegion(int x, int y, int w, int h, int[] target, int targetOffset, int targetScanlineStride) {
+        if (x < 0 || y < 0 || w < 0 || h < 0 || (long) x + w > width || (long) y + h > height) {
+            throw new IllegalArgumentException("The region (" + x + ", " + y + ", " + w + ", " + h + ") is not inside the image, the image width is " + width + ", and height is " + height + ".");
+        }
+
+        // Use a duplicate of each band, so that concurrent copies don't interfere with each others positions
+        IntBuffer band = null;
+        int bandIndex = -1;
+        for (int row = y; row < y + h; row++) {
+            if (row / rowsPerBand != bandIndex) {
+                bandIndex = row / rowsPerBand;
+                band = bands[bandIndex].duplicate();
+            }
+
+            band.position((row % rowsPerBand) * width + x);
+            band.get(target, targetOffset, w);
+            targetOffset += targetScanlineStride;
+        }
+    }
+
+    /**
+     * Writes any changes to a memory mapped image to its file.  Does nothing for images in direct memory.
+     */
+    public void force() {
+        if (mappedBuffers != null) {
+            for (MappedByteBuffer mappedBuffer : mappedBuffers) {
+                mappedBuffer.force();
+            }
+        }
+    }
+
+    /**
+     * Writes any changes to the file and closes it, if the image is memory mapped.
+     * The image should not be used after this.
+     */
+    @Override public void close() throws IOException {
+        if (fileChannel != null) {
+            force();
+            fileChannel.close();
+        }
+    }
+
+    private void writeRow(int row, int x, int[] source, int sourceOffset, int length) {
+        final IntBuffer band = bands[row / rowsPerBand].duplicate();
+        band.position((row % rowsPerBand) * width + x);
+        band.put(source, sourceOffset, length);
+    }
+
+    private void checkCoordinate(int x, int y) {
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height) throw new IllegalArgumentException("The coordinate ("+x+", "+y+") is out of bounds, the image width is "+width+", and height is "+height+".");
+    }
+
+    private static void checkSize(int width, int height) {
+        Check.positive(width, "width");
+        Check.positive(height, "height");
+        if ((long) width * BYTES_PER_PIXEL > MAX_BYTES_PER_BAND) throw new IllegalArgumentException("The image width " + width + " is too large");
+    }
+
+    private static int calculateRowsPerBand(int width, int height) {
+        return (int) Math.min(height, MAX_BYTES_PER_BAND / ((long) width * BYTES_PER_PIXEL));
+    }
+
+    private static int bandRows(int bandIndex, int rowsPerBand, int height) {
+        return Math.min(rowsPerBand, height - bandIndex * rowsPerBand);
+    }
+}
@@ -1,37 +1,95 @@
 package org.uiflow.desktop.rawimage;
 
 import org.flowutils.Check;
-import org.flowutils.MathUtils;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.MemoryImageSource;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 
 /**
  * Fast, low-level image, backed by a raw array of color data.
+ *
+ * Keeps track of which regions of the image have been changed since the last flush,
+ * so that only those need to be copied to the displayed image.
+ *
+ * The displayed image is created by the RawImageBackend given in the constructor.
  */
 public final class RawImage {
 
+    /**
+     * Maximum number of separate dirty regions to keep track of.
+     * If more regions are marked dirty, the closest ones are merged.
+     */
+    private static final int MAX_DIRTY_REGIONS = 8;
+
     private final int width;
     private final int height;
+    private final RawImageBackend backend;
 
     private Image image = null;
+    private MemoryImageSource imageSource = null;
+    private BufferedImage bufferedImage = null;
     private int[] imageData = null;
 
+    // Dirty regions, stored as start (inclusive) and end (exclusive) coordinates
+    private final int[] dirtyX1 = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyY1 = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyX2 = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyY2 = new int[MAX_DIRTY_REGIONS];
+    private int dirtyRegionCount = 0;
+    private boolean allDirty = false;
+
     /**
-     * Creates a new empty black RawImage with the specified size in pixels.
+     * Creates a new empty black RawImage with the specified size in pixels, backed by a MemoryImageSource.
      */
     public RawImage(int width, int height) {
+        this(width, height, RawImageBackend.MEMORY_IMAGE_SOURCE);
+    }
+
+    /**
+     * Creates a new empty black RawImage with the specified size in pixels.
+     * @param backend the type of image used to show the raw data.
+     */
+    public RawImage(int width, int height, RawImageBackend backend) {
+        Check.positive(width, "width");
+        Check.positive(height, "height");
+        Check.notNull(backend, "backend");
+
+        this.width = width;
+        this.height = height;
+        this.backend = backend;
+
+        initialize(null);
+    }
+
+    /**
+     * Creates a new RawImage with the specified size in pixels, that uses an existing array for its color data.
+     * The existing content of the array is kept.  Useful for reusing a large array for images of varying size.
+     *
+     * @param buffer array to store the color data in, ordered by row.  Must have room for at least width * height values,
+     *               any values after that are not used.
+     * @param backend the type of image used to show the raw data.
+     */
+    public RawImage(int width, int height, int[] buffer, RawImageBackend backend) {
         Check.positive(width, "width");
         Check.positive(height, "height");
+        Check.notNull(buffer, "buffer");
+        Check.notNull(backend, "backend");
+        if (buffer.length < width * height) throw new IllegalArgumentException("The buffer has room for " + buffer.length + " pixels, but an image of size " + width + " x " + height + " needs " + width * height + " pixels.");
 
         this.width = width;
         this.height = height;
+        this.backend = backend;
 
-        initialize();
+        initialize(buffer);
     }
 
     /**
@@ -48,12 +106,29 @@ public final class RawImage {
         return height;
     }
 
+    /**
+     * @return the type of image used to show the raw data.
+     */
+    public RawImageBackend getBackend() {
+        return backend;
+    }
+
     /**
      * @return the raw data of the image, ordered by row, where each element is a 32 bit color value with
      * 8 bit components, in the same order as used by Color.
-     * Can be edited.
+     * Can be edited.  As the caller may change any part of it, the whole image is marked dirty.
+     * Use getUntrackedBuffer together with markDirty to only update the edited regions on the next flush.
      */
     public int[] getBuffer() {
+        markAllDirty();
+        return imageData;
+    }
+
+    /**
+     * @return the raw data of the image, in the same format as returned by getBuffer, but without marking anything dirty.
+     * Call markDirty for any regions that are edited, otherwise the changes will not be shown after a flush.
+     */
+    public int[] getUntrackedBuffer() {
         return imageData;
     }
 
@@ -71,28 +146,28 @@ public final class RawImage {
      * @return the red component of the color value at the specified pixel, as a value between 0 and 1.  Throws exception if out of range.
      */
     public double getRed(int x, int y) {
-        return getColorComponent(getPixel(x, y), 0);
+        return RawImageOps.unpackComponent(getPixel(x, y), RawImageOps.RED_SHIFT);
     }
 
     /**
      * @return the green component of the color value at the specified pixel, as a value between 0 and 1.  Throws exception if out of range.
      */
     public double getGreen(int x, int y) {
-        return getColorComponent(getPixel(x, y), 1);
+        return RawImageOps.unpackComponent(getPixel(x, y), RawImageOps.GREEN_SHIFT);
     }
 
     /**
      * @return the blue component of the color value at the specified pixel, as a value between 0 and 1.  Throws exception if out of range.
      */
     public double getBlue(int x, int y) {
-        return getColorComponent(getPixel(x, y), 2);
+        return RawImageOps.unpackComponent(getPixel(x, y), RawImageOps.BLUE_SHIFT);
     }
 
     /**
      * @return the alpha component of the color value at the specified pixel, as a value between 0 and 1.  Throws exception if out of range.
      */
     public double getAlpha(int x, int y) {
-        return getColorComponent(getPixel(x, y), 3);
+        return RawImageOps.unpackComponent(getPixel(x, y), RawImageOps.ALPHA_SHIFT);
     }
 
     /**
@@ -103,55 +178,127 @@ public final class RawImage {
             y < 0 || y >= height) throw new IllegalArgumentException("The coordinate ("+x+", "+y+") is out of bounds, the image width is "+width+", and height is "+height+".");
 
         imageData[x + y*width] = colorCode;
+        markDirty(x, y, 1, 1);
     }
 
     /**
      * Sets the color value at the specified pixel.  Throws exception if coordinates are out of range.
      */
     public void setPixel(int x, int y, double red, double green, double blue) {
-
-        int colorCode = colorComponent(red, 0) |
-                        colorComponent(green, 1) |
-                        colorComponent(blue, 2) |
-                        colorComponent(1.0, 3);
-
-        setPixel(x, y, colorCode);
+        setPixel(x, y, RawImageOps.packColor(red, green, blue, 1.0));
     }
 
     /**
      * Sets the color value at the specified pixel.  Throws exception if coordinates are out of range.
      */
     public void setPixel(int x, int y, double red, double green, double blue, double alpha) {
+        setPixel(x, y, RawImageOps.packColor(red, green, blue, alpha));
+    }
 
-        int colorCode = colorComponent(red, 0) |
-                        colorComponent(green, 1) |
-                        colorComponent(blue, 2) |
-                        colorComponent(alpha, 3);
+    /**
+     * Ensures the latest changes to the image data buffer are updated into the image.
+     * Only the regions marked dirty since the last flush are copied.
+     * BufferedImage backends share the data buffer with the image, so for them this only clears the dirty regions.
+     */
+    public void flush() {
+        if (imageSource == null) {
+            // Nothing to copy
+        }
+        else if (allDirty) {
+            imageSource.newPixels();
+        }
+        else {
+            for (int i = 0; i < dirtyRegionCount; i++) {
+                imageSource.newPixels(dirtyX1[i], dirtyY1[i], dirtyX2[i] - dirtyX1[i], dirtyY2[i] - dirtyY1[i]);
+            }
+        }
 
-        setPixel(x, y, colorCode);
+        clearDirtyRegions();
     }
 
-    private int colorComponent(double c, int pos) {
-        int value = (int) (c * 256);
-        if (value < 0) value = 0;
-        if (value > 255) value = 255;
+    /**
+     * Marks the specified region as changed, so that it is updated on the next flush.
+     * Needed after editing the buffer returned by getUntrackedBuffer.  The region is clipped to the image.
+     */
+    public void markDirty(int x, int y, int w, int h) {
+        if (allDirty) return;
+
+        // Clip to image
+        int x1 = Math.max(x, 0);
+        int y1 = Math.max(y, 0);
+        int x2 = Math.min(x + w, width);
+        int y2 = Math.min(y + h, height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        if (x1 == 0 && y1 == 0 && x2 == width && y2 == height) {
+            markAllDirty();
+            return;
+        }
 
-        return value << (8 * pos);
-    }
+        // Merge with an existing region if it overlaps or touches it
+        for (int i = 0; i < dirtyRegionCount; i++) {
+            if (x1 <= dirtyX2[i] && x2 >= dirtyX1[i] &&
+                y1 <= dirtyY2[i] && y2 >= dirtyY1[i]) {
+                expandDirtyRegion(i, x1, y1, x2, y2);
+                return;
+            }
+        }
 
-    private double getColorComponent(int colorCode, int pos) {
-        colorCode = colorCode >>> (8 * pos);
-        colorCode &= 0xFF;
+        if (dirtyRegionCount < MAX_DIRTY_REGIONS) {
+            // Add new region
+            dirtyX1[dirtyRegionCount] = x1;
+            dirtyY1[dirtyRegionCount] = y1;
+            dirtyX2[dirtyRegionCount] = x2;
+            dirtyY2[dirtyRegionCount] = y2;
+            dirtyRegionCount++;
+        }
+        else {
+            // Merge with the region that grows the least
+            int closest = 0;
+            long smallestGrowth = Long.MAX_VALUE;
+            for (int i = 0; i < dirtyRegionCount; i++) {
+                final long oldArea = (long) (dirtyX2[i] - dirtyX1[i]) * (dirtyY2[i] - dirtyY1[i]);
+                final long mergedArea = (long) (Math.max(x2, dirtyX2[i]) - Math.min(x1, dirtyX1[i])) *
+                                        (Math.max(y2, dirtyY2[i]) - Math.min(y1, dirtyY1[i]));
+                if (mergedArea - oldArea < smallestGrowth) {
+                    smallestGrowth = mergedArea - oldArea;
+                    closest = i;
+                }
+            }
+            expandDirtyRegion(closest, x1, y1, x2, y2);
+        }
+    }
 
-        return colorCode / 255.0;
+    /**
+     * Marks the whole image as changed, so that all of it is updated on the next flush.
+     */
+    public void markAllDirty() {
+        allDirty = true;
+        dirtyRegionCount = 0;
     }
 
+    /**
+     * @return true if some part of the image has changed since the last flush.
+     */
+    public boolean isDirty() {
+        return allDirty || dirtyRegionCount > 0;
+    }
 
     /**
-     * Ensures the latest changes to the image data buffer are updated into the image.
+     * @return the regions that have changed since the last flush.
+     * If the whole image has changed, a single region covering the image is returned.
      */
-    public void flush() {
-        getImage().flush();
+    public List<Rectangle> getDirtyRegions() {
+        final List<Rectangle> regions = new ArrayList<Rectangle>(dirtyRegionCount + 1);
+        if (allDirty) {
+            regions.add(new Rectangle(0, 0, width, height));
+        }
+        else {
+            for (int i = 0; i < dirtyRegionCount; i++) {
+                regions.add(new Rectangle(dirtyX1[i], dirtyY1[i], dirtyX2[i] - dirtyX1[i], dirtyY2[i] - dirtyY1[i]));
+            }
+        }
+        return regions;
     }
 
     /**
@@ -174,7 +321,8 @@ public final class RawImage {
      * Clears the whole image to the specified color, indicated by a 32 color code with a component for each color channel.
      */
     public void clearToColor(int colorCode) {
-        Arrays.fill(imageData, colorCode);
+        Arrays.fill(imageData, 0, width * height, colorCode);
+        markAllDirty();
     }
 
     /**
@@ -206,9 +354,13 @@ public final class RawImage {
     }
 
     /**
-     * @return a new buffered image containing the raw data of this image.
+     * @return a buffered image containing the raw data of this image.
+     * For the BufferedImage backends this is the image used by this RawImage, sharing the same data buffer,
+     * so later changes to this RawImage are visible in it.  For other backends a new copy is created.
      */
     public BufferedImage createBufferedImage() {
+        if (bufferedImage != null) return bufferedImage;
+
         BufferedImage buf = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
         // TODO: Draw alpha pixels correctly
@@ -224,38 +376,86 @@ public final class RawImage {
      * Renders a filled rectangle on the raw image.
      */
     public void fillRect(int x, int y, int w, int h, int color) {
-        if (x + w >= 0 && x < width &&
-            y + h >= 0 && y < height) {
-
-            int x1 = MathUtils.clamp(x, 0, width - 1);
-            int x2 = MathUtils.clamp(x + w, 0, width - 1);
-            int y1 = MathUtils.clamp(y, 0, height - 1);
-            int y2 = MathUtils.clamp(y + h, 0, height - 1);
-
-            int i;
-            for (int yp = y1; yp < y2; yp++) {
-                i = yp * width + x1;
-                for (int xp = x1; xp < x2; xp++) {
-                    imageData[i++] = color;
+        RawImageOps.fill(this, x, y, w, h, color);
+    }
+
+    /**
+     * Fills this image with an enlarged copy of the source image, where each source pixel becomes a
+     * blockSize x blockSize block of pixels.  Useful for showing a preview rendered at a lower resolution.
+     * If the source is too small to cover this image, its last row and column are repeated.
+     *
+     * @param source image to copy from.
+     * @param blockSize width and height of the block that each source pixel is drawn as.
+     */
+    public void scaleUpFrom(RawImage source, int blockSize) {
+        Check.notNull(source, "source");
+        Check.positive(blockSize, "blockSize");
+
+        final int[] sourceData = source.imageData;
+        final int sourceWidth = source.width;
+
+        for (int y = 0; y < height; y++) {
+            final int rowStart = y * width;
+
+            if (y % blockSize != 0) {
+                // Same as the row above
+                System.arraycopy(imageData, rowStart - width, imageData, rowStart, width);
+            }
+            else {
+                final int sourceRowStart = Math.min(y / blockSize, source.height - 1) * sourceWidth;
+                int x = 0;
+                for (int sourceX = 0; sourceX < sourceWidth && x < width; sourceX++) {
+                    final int color = sourceData[sourceRowStart + sourceX];
+                    final int blockEnd = Math.min(x + blockSize, width);
+                    while (x < blockEnd) imageData[rowStart + x++] = color;
                 }
+
+                // Extend the last column if needed
+                if (x < width) Arrays.fill(imageData, rowStart + x, rowStart + width, imageData[rowStart + x - 1]);
             }
         }
+
+        markAllDirty();
     }
 
-    private void initialize() {
+    private void initialize(int[] buffer) {
 
-        // Don't include alpha for normal on-screen rendering, as it takes longer due to masking.
-        // For reference, a color model with an alpha channel would be created with
-        // new DirectColorModel(32, 0xff0000, 0x00ff00, 0x0000ff, 0xff000000);
-        DirectColorModel rgbColorModel = new DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff);
+        // Don't include alpha for normal on-screen rendering unless requested, as it takes longer due to masking.
+        final DirectColorModel colorModel = backend.hasAlpha() ?
+                                            new DirectColorModel(32, 0xff0000, 0x00ff00, 0x0000ff, 0xff000000) :
+                                            new DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff);
 
-        imageData = new int[width * height];
-        MemoryImageSource imageSource = new MemoryImageSource(width, height, rgbColorModel, imageData, 0, width);
-        imageSource.setAnimated(true);
+        imageData = buffer != null ? buffer : new int[width * height];
 
-        image = Toolkit.getDefaultToolkit().createImage(imageSource);
+        if (backend.isBufferedImage()) {
+            // Use the data array directly as the storage of the image, with the same layout as TYPE_INT_RGB / TYPE_INT_ARGB,
+            // so that Java2D uses its fast loops for those types when drawing it.
+            final DataBufferInt dataBuffer = new DataBufferInt(imageData, width * height);
+            final WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width, colorModel.getMasks(), null);
+            bufferedImage = new BufferedImage(colorModel, raster, false, null);
+            image = bufferedImage;
+        }
+        else {
+            imageSource = new MemoryImageSource(width, height, colorModel, imageData, 0, width);
+            imageSource.setAnimated(true);
+
+            image = Toolkit.getDefaultToolkit().createImage(imageSource);
+        }
+
+        if (buffer == null) clear();
+        else markAllDirty();
+    }
+
+    private void expandDirtyRegion(int index, int x1, int y1, int x2, int y2) {
+        if (x1 < dirtyX1[index]) dirtyX1[index] = x1;
+        if (y1 < dirtyY1[index]) dirtyY1[index] = y1;
+        if (x2 > dirtyX2[index]) dirtyX2[index] = x2;
+        if (y2 > dirtyY2[index]) dirtyY2[index] = y2;
+    }
 
-        clear();
+    private void clearDirtyRegions() {
+        allDirty = false;
+        dirtyRegionCount = 0;
     }
 }
 
@@ -0,0 +1,48 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * The kind of java.awt.Image that a RawImage uses to show its raw color data.
+ */
+public enum RawImageBackend {
+
+    /**
+     * A Toolkit image fed from an animated MemoryImageSource.
+     * Changed regions are copied to the image when the RawImage is flushed.  Alpha is ignored.
+     */
+    MEMORY_IMAGE_SOURCE(false, false),
+
+    /**
+     * A TYPE_INT_RGB BufferedImage that uses the raw color data array directly as its pixel storage.
+     * Flushing is not needed, and the BufferedImage can be shared without copying.  Alpha is ignored.
+     */
+    BUFFERED_IMAGE_RGB(true, false),
+
+    /**
+     * A TYPE_INT_ARGB BufferedImage that uses the raw color data array directly as its pixel storage.
+     * Flushing is not needed, and the BufferedImage can be shared without copying.
+     * The alpha channel is used, which makes drawing the image somewhat slower.
+     */
+    BUFFERED_IMAGE_ARGB(true, true);
+
+    private final boolean bufferedImage;
+    private final boolean alpha;
+
+    RawImageBackend(boolean bufferedImage, boolean alpha) {
+        this.bufferedImage = bufferedImage;
+        this.alpha = alpha;
+    }
+
+    /**
+     * @return true if the image is a BufferedImage sharing the raw color data array.
+     */
+    public boolean isBufferedImage() {
+        return bufferedImage;
+    }
+
+    /**
+     * @return true if the alpha channel of the color data is used when drawing the image.
+     */
+    public boolean hasAlpha() {
+        return alpha;
+    }
+}
@@ -0,0 +1,477 @@
+package org.uiflow.desktop.rawimage;
+
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Combines an ordered stack of layers into a target RawImage.
+ *
+ * Each layer is a RawImage placed at the top left corner of the target, with an opacity and a CompositeMode.
+ * Layers are blended from the bottom up, starting from the background color, using premultiplied alpha.
+ * The layer images use the normal RawImage color format, and the result is written in the same format.
+ *
+ * Only the regions that changed since the previous composite are recomposited.  Changes to layer images are picked up
+ * from their dirty regions, which are flushed when composited, so draw to layer images with the tracked RawImage
+ * methods, or call markDirty on them after editing their buffers directly.  Changing the layers or their settings
+ * marks the area they cover as changed.  Like in RawImage, up to eight separate changed regions are kept track of,
+ * and each is recomposited on its own.  Rows are composited in parallel for large regions.
+ *
+ * Not thread safe, use from one thread only.
+ */
+public final class RawImageCompositor {
+
+    private static final int MIN_PIXELS_PER_BAND = 32 * 1024;
+    private static final int MAX_DIRTY_REGIONS = 8;
+
+    // Tables for un-premultiplying, 255 / alpha as a fixed point number with 16 fractional bits
+    private static final int[] INVERSE_ALPHA = new int[256];
+    static {
+        for (int alpha = 1; alpha < 256; alpha++) {
+            INVERSE_ALPHA[alpha] = (255 * 65536 + alpha / 2) / alpha;
+        }
+    }
+
+    // Value of each composite factor for each alpha value of the other color
+    private static final int[][] FACTOR_TABLES = new int[CompositeMode.Factor.values().length][256];
+    static {
+        for (CompositeMode.Factor factor : CompositeMode.Factor.values()) {
+            for (int alpha = 0; alpha < 256; alpha++) {
+                FACTOR_TABLES[factor.ordinal()][alpha] = factor.apply(alpha);
+            }
+        }
+    }
+
+    private final List<Layer> layers = new ArrayList<Layer>();
+    private final List<Layer> readOnlyLayers = Collections.unmodifiableList(layers);
+
+    private int backgroundColor = 0;
+
+    private RawImage lastTarget;
+    private int lastWidth;
+    private int lastHeight;
+
+    // Bounds of the regions to recomposite, x2 and y2 are exclusive
+    private final int[] dirtyX1 = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyY1 = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyX2 = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyY2 = new int[MAX_DIRTY_REGIONS];
+    private int dirtyRegionCount = 0;
+    private boolean allDirty = false;
+
+    /**
+     * Creates a compositor without layers and with a transparent background.
+     */
+    public RawImageCompositor() {
+    }
+
+    /**
+     * Adds a layer on top of the existing layers, drawn with SOURCE_OVER at full opacity.
+     * @return the added layer.
+     */
+    public Layer addLayer(RawImage image) {
+        return addLayer(image, CompositeMode.SOURCE_OVER, 1.0);
+    }
+
+    /**
+     * Adds a layer on top of the existing layers.
+     * @param image the color data of the layer.
+     * @param mode how to combine the layer with the layers below it.
+     * @param opacity opacity of the layer, 0 = transparent, 1 = use the alpha of the layer image as is.
+     * @return the added layer.
+     */
+    public Layer addLayer(RawImage image, CompositeMode mode, double opacity) {
+        final Layer layer = new Layer(image, mode, opacity);
+        layers.add(layer);
+        layer.markAllDirty();
+        return layer;
+    }
+
+    /**
+     * Removes a layer.  Does nothing if the layer is not in this compositor.
+     */
+    public void removeLayer(Layer layer) {
+        if (layers.remove(layer)) {
+            layer.markAllDirty();
+        }
+    }
+
+    /**
+     * Moves a layer to a new position in the stack.
+     * @param layer layer to move.
+     * @param index new index of the layer, 0 is the bottom layer.
+     */
+    public void moveLayer(Layer layer, int index) {
+        if (!layers.contains(layer)) throw new IllegalArgumentException("The layer is not in this compositor");
+        if (index < 0 || index >= layers.size()) throw new IllegalArgumentException("The index should be in the range 0 to " + (layers.size() - 1) + ", but it was " + index);
+
+        layers.remove(layer);
+        layers.add(index, layer);
+        layer.markAllDirty();
+    }
+
+    /**
+     * @return the layers, from the bottom to the top.  Read only.
+     */
+    public List<Layer> getLayers() {
+        return readOnlyLayers;
+    }
+
+    /**
+     * @return color that the layers are drawn on.  Transparent black by default.
+     */
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * @param backgroundColor color that the layers are drawn on.
+     */
+    public void setBackgroundColor(int backgroundColor) {
+        if (this.backgroundColor != backgroundColor) {
+            this.backgroundColor = backgroundColor;
+            markAllDirty();
+        }
+    }
+
+    /**
+     * Marks a region to be recomposited on the next composite.
+     */
+    public void markDirty(int x, int y, int width, int height) {
+        if (allDirty || width <= 0 || height <= 0) return;
+
+        final int x1 = x;
+        final int y1 = y;
+        final int x2 = (int) Math.min((long) x + width, Integer.MAX_VALUE);
+        final int y2 = (int) Math.min((long) y + height, Integer.MAX_VALUE);
+
+        // Merge with an existing region if it overlaps or touches it
+        for (int i = 0; i < dirtyRegionCount; i++) {
+            if (x1 <= dirtyX2[i] && x2 >= dirtyX1[i] &&
+                y1 <= dirtyY2[i] && y2 >= dirtyY1[i]) {
+                expandDirtyRegion(i, x1, y1, x2, y2);
+                return;
+            }
+        }
+
+        if (dirtyRegionCount < MAX_DIRTY_REGIONS) {
+            // Add new region
+            dirtyX1[dirtyRegionCount] = x1;
+            dirtyY1[dirtyRegionCount] = y1;
+            dirtyX2[dirtyRegionCount] = x2;
+            dirtyY2[dirtyRegionCount] = y2;
+            dirtyRegionCount++;
+        }
+        else {
+            // Merge with the region that grows the least
+            int closest = 0;
+            long smallestGrowth = Long.MAX_VALUE;
+            for (int i = 0; i < dirtyRegionCount; i++) {
+                final long oldArea = ((long) dirtyX2[i] - dirtyX1[i]) * ((long) dirtyY2[i] - dirtyY1[i]);
+                final long mergedArea = ((long) Math.max(x2, dirtyX2[i]) - Math.min(x1, dirtyX1[i])) *
+                                        ((long) Math.max(y2, dirtyY2[i]) - Math.min(y1, dirtyY1[i]));
+                if (mergedArea - oldArea < smallestGrowth) {
+                    smallestGrowth = mergedArea - oldArea;
+                    closest = i;
+                }
+            }
+            expandDirtyRegion(closest, x1, y1, x2, y2);
+        }
+    }
+
+    /**
+     * Marks everything to be recomposited on the next composite.
+     */
+    public void markAllDirty() {
+        allDirty = true;
+        dirtyRegionCount = 0;
+    }
+
+    /**
+     * Composites the changed regions of the layers into the target, and marks the recomposited regions dirty in it.
+     * Everything is recomposited if the target is a different image or has a different size than on the previous call.
+     * Parts of the target outside a layer image are treated as transparent in that layer.
+     */
+    public void composite(RawImage target) {
+        notNull(target, "target");
+
+        if (target != lastTarget || target.getWidth() != lastWidth || target.getHeight() != lastHeight) {
+            lastTarget = target;
+            lastWidth = target.getWidth();
+            lastHeight = target.getHeight();
+            markAllDirty();
+        }
+
+        // Collect the changes made to the layer images
+        for (Layer layer : layers) {
+            final RawImage image = layer.image;
+            if (image.isDirty()) {
+                if (layer.isVisible()) {
+                    for (Rectangle region : image.getDirtyRegions()) {
+                        markDirty(region.x, region.y, region.width, region.height);
+                    }
+                }
+                image.flush();
+            }
+        }
+
+        if (!allDirty && dirtyRegionCount == 0) return;
+
+        final LayerStack stack = new LayerStack(layers);
+        final int width = target.getWidth();
+        final int height = target.getHeight();
+        if (allDirty) {
+            compositeRegion(stack, target, 0, 0, width, height);
+        }
+        else {
+            for (int i = 0; i < dirtyRegionCount; i++) {
+                compositeRegion(stack, target,
+                                Math.max(dirtyX1[i], 0),
+                                Math.max(dirtyY1[i], 0),
+                                Math.min(dirtyX2[i], width),
+                                Math.min(dirtyY2[i], height));
+            }
+        }
+
+        allDirty = false;
+        dirtyRegionCount = 0;
+    }
+
+    /**
+     * Recomposites a region of the target, clipped to the target, and marks it dirty in the target.
+     */
+    private void compositeRegion(final LayerStack stack, RawImage target, final int x1, int y1, final int x2, int y2) {
+        if (x1 >= x2 || y1 >= y2) return;
+
+        final int width = target.getWidth();
+        final int background = premultiply(backgroundColor, 256);
+        final int[] targetData = target.getUntrackedBuffer();
+
+        ParallelRange.forRange(y1, y2, Math.max(1, MIN_PIXELS_PER_BAND / (x2 - x1)), new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int y = start; y < end; y++) {
+                    final int rowStart = y * width;
+
+                    // Accumulate the premultiplied result in the target row
+                    for (int i = rowStart + x1; i < rowStart + x2; i++) {
+                        targetData[i] = background;
+                    }
+
+                    for (int layer = 0; layer < stack.count; layer++) {
+                        final int[] sourceFactors = stack.sourceFactors[layer];
+                        final int[] destinationFactors = stack.destinationFactors[layer];
+                        if (y >= stack.heights[layer]) {
+                            compositeSpan(null, 0, targetData, rowStart + x1, x2 - x1,
+                                          0, sourceFactors, destinationFactors);
+                        }
+                        else {
+                            final int layerWidth = stack.widths[layer];
+                            final int layerEnd = Math.min(x2, layerWidth);
+                            if (layerEnd > x1) {
+                                compositeSpan(stack.data[layer], y * layerWidth + x1, targetData, rowStart + x1, layerEnd - x1,
+                                              stack.opacities[layer], sourceFactors, destinationFactors);
+                            }
+                            if (layerEnd < x2) {
+                                final int outsideStart = Math.max(x1, layerEnd);
+                                compositeSpan(null, 0, targetData, rowStart + outsideStart, x2 - outsideStart,
+                                              0, sourceFactors, destinationFactors);
+                            }
+                        }
+                    }
+
+                    for (int i = rowStart + x1; i < rowStart + x2; i++) {
+                        targetData[i] = unpremultiply(targetData[i]);
+                    }
+                }
+            }
+        });
+
+        target.markDirty(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    private void expandDirtyRegion(int index, int x1, int y1, int x2, int y2) {
+        dirtyX1[index] = Math.min(dirtyX1[index], x1);
+        dirtyY1[index] = Math.min(dirtyY1[index], y1);
+        dirtyX2[index] = Math.max(dirtyX2[index], x2);
+        dirtyY2[index] = Math.max(dirtyY2[index], y2);
+    }
+
+    /**
+     * Combines a span of layer colors with the premultiplied colors accumulated in the target.
+     * @param source layer colors, or null if the layer is transparent for the span.
+     * @param opacity layer opacity, 0..256.
+     */
+    private static void compositeSpan(int[] source, int sourceIndex, int[] target, int targetIndex, int length,
+                                      int opacity, int[] sourceFactors, int[] destinationFactors) {
+        for (int i = 0; i < length; i++) {
+            final int s = source == null ? 0 : premultiply(source[sourceIndex + i], opacity);
+            final int d = target[targetIndex + i];
+            final int sa = s >>> 24;
+            final int da = d >>> 24;
+            final int fs = sourceFactors[da];
+            final int fd = destinationFactors[sa];
+
+            final int a = combine(sa,               da,               fs, fd);
+            final int r = combine(s >>> 16 & 0xFF, d >>> 16 & 0xFF, fs, fd);
+            final int g = combine(s >>> 8 & 0xFF,  d >>> 8 & 0xFF,  fs, fd);
+            final int b = combine(s & 0xFF,        d & 0xFF,        fs, fd);
+            target[targetIndex + i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static int combine(int source, int destination, int sourceFactor, int destinationFactor) {
+        return Math.min(divideBy255(source * sourceFactor + destination * destinationFactor), 255);
+    }
+
+    /**
+     * @return the color with its color components multiplied by its alpha, and all components multiplied by the opacity.
+     */
+    private static int premultiply(int color, int opacity256) {
+        final int a = ((color >>> 24) * opacity256) >> 8;
+        if (a == 0) return 0;
+
+        final int r = divideBy255((color >>> 16 & 0xFF) * a);
+        final int g = divideBy255((color >>> 8 & 0xFF) * a);
+        final int b = divideBy255((color & 0xFF) * a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int unpremultiply(int color) {
+        final int a = color >>> 24;
+        if (a == 0) return 0;
+        if (a == 255) return color;
+
+        final int inverse = INVERSE_ALPHA[a];
+        final int r = Math.min(((color >>> 16 & 0xFF) * inverse + 32768) >> 16, 255);
+        final int g = Math.min(((color >>> 8 & 0xFF) * inverse + 32768) >> 16, 255);
+        final int b = Math.min(((color & 0xFF) * inverse + 32768) >> 16, 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int divideBy255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+
+    private static void checkOpacity(double opacity) {
+        if (!(opacity >= 0 && opacity <= 1)) throw new IllegalArgumentException("The opacity should be in the range 0 to 1, but it was " + opacity);
+    }
+
+    /**
+     * Snapshot of the visible layers, so that the band tasks do not need to access the layer list.
+     */
+    private static final class LayerStack {
+        private final int count;
+        private final int[][] data;
+        private final int[] widths;
+        private final int[] heights;
+        private final int[] opacities;
+        private final int[][] sourceFactors;
+        private final int[][] destinationFactors;
+
+        private LayerStack(List<Layer> layers) {
+            final List<Layer> visibleLayers = new ArrayList<Layer>(layers.size());
+            for (Layer layer : layers) {
+                if (layer.isVisible()) visibleLayers.add(layer);
+            }
+
+            count = visibleLayers.size();
+            data = new int[count][];
+            widths = new int[count];
+            heights = new int[count];
+            opacities = new int[count];
+            sourceFactors = new int[count][];
+            destinationFactors = new int[count][];
+            for (int i = 0; i < count; i++) {
+                final Layer layer = visibleLayers.get(i);
+                data[i] = layer.image.getUntrackedBuffer();
+                widths[i] = layer.image.getWidth();
+                heights[i] = layer.image.getHeight();
+                opacities[i] = (int) Math.round(layer.opacity * 256);
+                sourceFactors[i] = FACTOR_TABLES[layer.mode.getSourceFactor().ordinal()];
+                destinationFactors[i] = FACTOR_TABLES[layer.mode.getDestinationFactor().ordinal()];
+            }
+        }
+    }
+
+    /**
+     * A RawImage in the layer stack, with settings for how it is combined with the layers below it.
+     */
+    public final class Layer {
+        private final RawImage image;
+        private CompositeMode mode;
+        private double opacity;
+        private boolean visible = true;
+
+        private Layer(RawImage image, CompositeMode mode, double opacity) {
+            notNull(image, "image");
+            notNull(mode, "mode");
+            checkOpacity(opacity);
+
+            this.image = image;
+            this.mode = mode;
+            this.opacity = opacity;
+        }
+
+        /**
+         * @return the color data of the layer.
+         */
+        public RawImage getImage() {
+            return image;
+        }
+
+        public CompositeMode getMode() {
+            return mode;
+        }
+
+        public void setMode(CompositeMode mode) {
+            notNull(mode, "mode");
+            if (this.mode != mode) {
+                // The old and new modes may affect different areas
+                markAllDirty();
+                this.mode = mode;
+                markAllDirty();
+            }
+        }
+
+        public double getOpacity() {
+            return opacity;
+        }
+
+        /**
+         * @param opacity opacity of the layer, 0 = transparent, 1 = use the alpha of the layer image as is.
+         */
+        public void setOpacity(double opacity) {
+            checkOpacity(opacity);
+            if (this.opacity != opacity) {
+                this.opacity = opacity;
+                markAllDirty();
+            }
+        }
+
+        public boolean isVisible() {
+            return visible;
+        }
+
+        public void setVisible(boolean visible) {
+            if (this.visible != visible) {
+                this.visible = visible;
+                markAllDirty();
+            }
+        }
+
+        /**
+         * Marks the area affected by this layer to be recomposited.
+         */
+        private void markAllDirty() {
+            if (mode.affectsDestinationOutsideSource()) RawImageCompositor.this.markAllDirty();
+            else markDirty(0, 0, image.getWidth(), image.getHeight());
+        }
+    }
+}
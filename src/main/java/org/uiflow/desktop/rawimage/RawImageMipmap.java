@@ -0,0 +1,188 @@
+package org.uiflow.desktop.rawimage;
+
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * A pyramid of successively halved copies of a RawImage, used for showing the image zoomed out with good quality
+ * and a cost that depends on the displayed size rather than the image size.
+ *
+ * Level 0 is the source image itself, and each following level is half the width and height of the previous one,
+ * rounded up, down to a single pixel.  Each pixel is the average of the two by two pixels it covers in the previous level.
+ * After the source changes, call update with the changed region, or updateDirtyRegions before the source is flushed,
+ * to recalculate only the affected parts of the levels.  Rows are calculated in parallel for large levels.
+ */
+public final class RawImageMipmap {
+
+    private static final int MIN_PIXELS_PER_BAND = 32 * 1024;
+
+    private RawImage source;
+    private RawImage[] levels;
+
+    /**
+     * Creates the levels for the source image and calculates them.
+     */
+    public RawImageMipmap(RawImage source) {
+        setSource(source);
+    }
+
+    /**
+     * Changes the image the levels are calculated from, and recalculates them.
+     * The existing level images are reused if the new source has the same size and alpha support as the old one,
+     * e.g. when alternating between the front and back images of a double buffered view.
+     */
+    public void setSource(RawImage source) {
+        notNull(source, "source");
+
+        if (this.source == null ||
+            source.getWidth() != this.source.getWidth() ||
+            source.getHeight() != this.source.getHeight() ||
+            source.getBackend().hasAlpha() != this.source.getBackend().hasAlpha()) {
+            levels = createLevels(source);
+        }
+        else {
+            levels[0] = source;
+        }
+        this.source = source;
+
+        updateAll();
+    }
+
+    private static RawImage[] createLevels(RawImage source) {
+        final RawImageBackend backend = source.getBackend().hasAlpha() ? RawImageBackend.BUFFERED_IMAGE_ARGB : RawImageBackend.BUFFERED_IMAGE_RGB;
+        final List<RawImage> levelList = new ArrayList<RawImage>();
+        levelList.add(source);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (width > 1 || height > 1) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            levelList.add(new RawImage(width, height, backend));
+        }
+        return levelList.toArray(new RawImage[levelList.size()]);
+    }
+
+    /**
+     * @return the image the levels are calculated from.
+     */
+    public RawImage getSource() {
+        return source;
+    }
+
+    /**
+     * @return number of levels, including the source image.
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @return the image at the specified level, 0 is the source image, 1 is half its size, and so on.
+     */
+    public RawImage getLevel(int level) {
+        if (level < 0 || level >= levels.length) throw new IllegalArgumentException("The level should be in the range 0 to " + (levels.length - 1) + ", but it was " + level);
+        return levels[level];
+    }
+
+    /**
+     * @param scale the scale the source image is shown at, 1 for the original size, 0.5 for half the size, and so on.
+     * @return the index of the smallest level that is still at least as large as the source image at the scale,
+     *         so that it only needs to be scaled down by less than half when drawn.
+     */
+    public int getLevelForScale(double scale) {
+        if (!(scale > 0)) throw new IllegalArgumentException("The scale should be a positive number, but it was " + scale);
+        if (scale >= 1) return 0;
+
+        int level = 0;
+        double levelScale = 0.5;
+        while (levelScale >= scale && level < levels.length - 1) {
+            level++;
+            levelScale *= 0.5;
+        }
+        return level;
+    }
+
+    /**
+     * Recalculates all levels from the source image.
+     */
+    public void updateAll() {
+        update(0, 0, source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Recalculates the parts of the levels that are affected by the dirty regions of the source image.
+     * Call this before the source image is flushed, as flushing clears the dirty regions.
+     */
+    public void updateDirtyRegions() {
+        for (Rectangle region : source.getDirtyRegions()) {
+            update(region.x, region.y, region.width, region.height);
+        }
+    }
+
+    /**
+     * Recalculates the parts of the levels that are affected by a changed region of the source image.
+     * The region is clipped to the source image.
+     */
+    public void update(int x, int y, int width, int height) {
+        int x1 = Math.max(x, 0);
+        int y1 = Math.max(y, 0);
+        int x2 = Math.min(x + width, source.getWidth());
+        int y2 = Math.min(y + height, source.getHeight());
+        if (x1 >= x2 || y1 >= y2) return;
+
+        for (int level = 1; level < levels.length; level++) {
+            // Pixels covering the changed region in the smaller level
+            x1 = x1 / 2;
+            y1 = y1 / 2;
+            x2 = (x2 + 1) / 2;
+            y2 = (y2 + 1) / 2;
+
+            downsample(levels[level - 1], levels[level], x1, y1, x2, y2);
+        }
+    }
+
+    /**
+     * Calculates the pixels in the given region of the target as averages of two by two pixels of the source.
+     * Source pixels outside the source image are clamped to its edges.
+     */
+    private static void downsample(RawImage source, final RawImage target, final int x1, final int y1, final int x2, final int y2) {
+        final int[] sourceData = source.getUntrackedBuffer();
+        final int[] targetData = target.getUntrackedBuffer();
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        final int targetWidth = target.getWidth();
+
+        ParallelRange.forRange(y1, y2, Math.max(1, MIN_PIXELS_PER_BAND / (x2 - x1)), new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int y = start; y < end; y++) {
+                    final int row1 = 2 * y * sourceWidth;
+                    final int row2 = Math.min(2 * y + 1, sourceHeight - 1) * sourceWidth;
+                    int targetIndex = y * targetWidth + x1;
+                    for (int x = x1; x < x2; x++) {
+                        final int left = 2 * x;
+                        final int right = Math.min(left + 1, sourceWidth - 1);
+                        targetData[targetIndex++] = average(sourceData[row1 + left], sourceData[row1 + right],
+                                                           sourceData[row2 + left], sourceData[row2 + right]);
+                    }
+                }
+            }
+        });
+
+        target.markDirty(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * @return the average of four colors, calculated for two channels at a time.
+     */
+    private static int average(int a, int b, int c, int d) {
+        final int redAndBlue = (a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF) + 0x00020002;
+        final int alphaAndGreen = (a >>> 8 & 0x00FF00FF) + (b >>> 8 & 0x00FF00FF) + (c >>> 8 & 0x00FF00FF) + (d >>> 8 & 0x00FF00FF) + 0x00020002;
+        return (redAndBlue >>> 2 & 0x00FF00FF) | (alphaAndGreen << 6 & 0xFF00FF00);
+    }
+}
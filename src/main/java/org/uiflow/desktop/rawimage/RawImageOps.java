@@ -0,0 +1,346 @@
+package org.uiflow.desktop.rawimage;
+
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Bulk operations on the color data of RawImages.
+ *
+ * The operations work on whole rows of the color data at a time, with simple counted inner loops without per pixel
+ * branching or floating point math, so that the JIT compiler can unroll and vectorize them.
+ * Large regions are split into bands of rows that are processed in parallel.
+ *
+ * Color codes are 32 bit values with 8 bits for each of the alpha, red, green and blue components,
+ * in that order from the highest to the lowest bits, as used by Color.getRGB().
+ * The regions are clipped to the images, and the changed regions are marked dirty.
+ */
+public final class RawImageOps {
+
+    public static final int ALPHA_SHIFT = 24;
+    public static final int RED_SHIFT = 16;
+    public static final int GREEN_SHIFT = 8;
+    public static final int BLUE_SHIFT = 0;
+
+    /**
+     * Minimum number of pixels to process in one band when processing in parallel.
+     */
+    private static final int MIN_PIXELS_PER_BAND = 64 * 1024;
+
+    /**
+     * Fills a rectangle of the target with a color.
+     */
+    public static void fill(RawImage target, int x, int y, int width, int height, final int colorCode) {
+        notNull(target, "target");
+
+        final int imageWidth = target.getWidth();
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = Math.min(x + width, imageWidth);
+        final int y2 = Math.min(y + height, target.getHeight());
+        if (x1 >= x2 || y1 >= y2) return;
+
+        final int[] data = target.getUntrackedBuffer();
+        forRows(y1, y2, x2 - x1, new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int row = start; row < end; row++) {
+                    final int rowStart = row * imageWidth;
+                    Arrays.fill(data, rowStart + x1, rowStart + x2, colorCode);
+                }
+            }
+        });
+
+        target.markDirty(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Copies a rectangle of color data from the source to the target.
+     * The source and target may be the same image, as long as the rectangles do not overlap.
+     *
+     * @param source image to copy from.
+     * @param sourceX left edge of the rectangle to copy in the source.
+     * @param sourceY top edge of the rectangle to copy in the source.
+     * @param width width of the rectangle to copy.
+     * @param height height of the rectangle to copy.
+     * @param target image to copy to.
+     * @param targetX left edge in the target to copy the rectangle to.
+     * @param targetY top edge in the target to copy the rectangle to.
+     */
+    public static void blit(RawImage source, int sourceX, int sourceY, int width, int height,
+                            RawImage target, int targetX, int targetY) {
+        final Region region = new Region(source, sourceX, sourceY, width, height, target, targetX, targetY);
+        if (region.isEmpty()) return;
+
+        final int[] sourceData = source.getUntrackedBuffer();
+        final int[] targetData = target.getUntrackedBuffer();
+        forRows(0, region.height, region.width, new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int row = start; row < end; row++) {
+                    System.arraycopy(sourceData, region.sourceIndex(row), targetData, region.targetIndex(row), region.width);
+                }
+            }
+        });
+
+        target.markDirty(region.targetX, region.targetY, region.width, region.height);
+    }
+
+    /**
+     * Draws a rectangle of the source over the target, blending it using the alpha channel of the source
+     * (source over destination compositing with non-premultiplied colors).
+     *
+     * @param source image to draw.
+     * @param sourceX left edge of the rectangle to draw in the source.
+     * @param sourceY top edge of the rectangle to draw in the source.
+     * @param width width of the rectangle to draw.
+     * @param height height of the rectangle to draw.
+     * @param target image to draw on.
+     * @param targetX left edge in the target to draw the rectangle to.
+     * @param targetY top edge in the target to draw the rectangle to.
+     * @param opacity opacity to multiply the source alpha with, 0 = transparent, 1 = use the source alpha as is.
+     */
+    public static void alphaBlend(RawImage source, int sourceX, int sourceY, int width, int height,
+                                  RawImage target, int targetX, int targetY,
+                                  double opacity) {
+        final Region region = new Region(source, sourceX, sourceY, width, height, target, targetX, targetY);
+        if (region.isEmpty()) return;
+
+        // Opacity as a fixed point number with 8 fractional bits
+        final int opacity256 = toFixedPoint8(opacity);
+        if (opacity256 == 0) return;
+
+        final int[] sourceData = source.getUntrackedBuffer();
+        final int[] targetData = target.getUntrackedBuffer();
+        forRows(0, region.height, region.width, new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int row = start; row < end; row++) {
+                    blendSpan(sourceData, region.sourceIndex(row), targetData, region.targetIndex(row), region.width, opacity256);
+                }
+            }
+        });
+
+        target.markDirty(region.targetX, region.targetY, region.width, region.height);
+    }
+
+    /**
+     * Multiplies each color channel in a rectangle of the target with a scale.  Results are clamped to the valid range.
+     */
+    public static void scaleChannels(RawImage target, int x, int y, int width, int height,
+                                     double redScale, double greenScale, double blueScale, double alphaScale) {
+        notNull(target, "target");
+
+        final int imageWidth = target.getWidth();
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = Math.min(x + width, imageWidth);
+        final int y2 = Math.min(y + height, target.getHeight());
+        if (x1 >= x2 || y1 >= y2) return;
+
+        // Scales as fixed point numbers with 16 fractional bits
+        final int red = toFixedPoint16(redScale);
+        final int green = toFixedPoint16(greenScale);
+        final int blue = toFixedPoint16(blueScale);
+        final int alpha = toFixedPoint16(alphaScale);
+
+        final int[] data = target.getUntrackedBuffer();
+        forRows(y1, y2, x2 - x1, new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int row = start; row < end; row++) {
+                    final int rowStart = row * imageWidth;
+                    for (int i = rowStart + x1; i < rowStart + x2; i++) {
+                        final int c = data[i];
+                        final int a = Math.min(((c >>> ALPHA_SHIFT)        * alpha) >>> 16, 255);
+                        final int r = Math.min(((c >>> RED_SHIFT   & 0xFF) * red)   >>> 16, 255);
+                        final int g = Math.min(((c >>> GREEN_SHIFT & 0xFF) * green) >>> 16, 255);
+                        final int b = Math.min(((c                 & 0xFF) * blue)  >>> 16, 255);
+                        data[i] = (a << ALPHA_SHIFT) | (r << RED_SHIFT) | (g << GREEN_SHIFT) | b;
+                    }
+                }
+            }
+        });
+
+        target.markDirty(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Packs separate color channel values in the 0..1 range into color codes.  Values outside the range are clamped.
+     *
+     * @param red red channel values.
+     * @param green green channel values.
+     * @param blue blue channel values.
+     * @param alpha alpha channel values, or null to use fully opaque colors.
+     * @param sourceOffset index of the first value to pack in the channel arrays.
+     * @param target array to write the color codes to.
+     * @param targetOffset index to write the first color code to in the target.
+     * @param count number of colors to pack.
+     */
+    public static void packColors(float[] red, float[] green, float[] blue, float[] alpha, int sourceOffset,
+                                  int[] target, int targetOffset, int count) {
+        notNull(red, "red");
+        notNull(green, "green");
+        notNull(blue, "blue");
+        notNull(target, "target");
+
+        final int delta = targetOffset - sourceOffset;
+        final int end = sourceOffset + count;
+        for (int i = sourceOffset; i < end; i++) {
+            final int a = alpha == null ? 255 : toComponent(alpha[i]);
+            target[i + delta] = (a << ALPHA_SHIFT) |
+                                (toComponent(red[i]) << RED_SHIFT) |
+                                (toComponent(green[i]) << GREEN_SHIFT) |
+                                toComponent(blue[i]);
+        }
+    }
+
+    /**
+     * Unpacks color codes into separate color channel values in the 0..1 range.
+     *
+     * @param source array with the color codes.
+     * @param sourceOffset index of the first color code to unpack.
+     * @param red array to write the red channel values to.
+     * @param green array to write the green channel values to.
+     * @param blue array to write the blue channel values to.
+     * @param alpha array to write the alpha channel values to, or null if not needed.
+     * @param targetOffset index to write the first values to in the channel arrays.
+     * @param count number of colors to unpack.
+     */
+    public static void unpackColors(int[] source, int sourceOffset,
+                                    float[] red, float[] green, float[] blue, float[] alpha, int targetOffset,
+                                    int count) {
+        notNull(source, "source");
+        notNull(red, "red");
+        notNull(green, "green");
+        notNull(blue, "blue");
+
+        final float scale = 1f / 255f;
+        final int delta = sourceOffset - targetOffset;
+        final int end = targetOffset + count;
+        for (int i = targetOffset; i < end; i++) {
+            final int c = source[i + delta];
+            red[i] = (c >>> RED_SHIFT & 0xFF) * scale;
+            green[i] = (c >>> GREEN_SHIFT & 0xFF) * scale;
+            blue[i] = (c & 0xFF) * scale;
+        }
+
+        if (alpha != null) {
+            for (int i = targetOffset; i < end; i++) {
+                alpha[i] = (source[i + delta] >>> ALPHA_SHIFT) * scale;
+            }
+        }
+    }
+
+    /**
+     * @return a color code with the specified color components, given in the 0..1 range.  Values outside the range are clamped.
+     */
+    public static int packColor(double red, double green, double blue, double alpha) {
+        return (toComponent(alpha) << ALPHA_SHIFT) |
+               (toComponent(red) << RED_SHIFT) |
+               (toComponent(green) << GREEN_SHIFT) |
+               (toComponent(blue) << BLUE_SHIFT);
+    }
+
+    /**
+     * @return the component of the color code at the specified shift, as a value between 0 and 1.
+     */
+    public static double unpackComponent(int colorCode, int shift) {
+        return ((colorCode >>> shift) & 0xFF) / 255.0;
+    }
+
+    private static void blendSpan(int[] sourceData, int sourceIndex, int[] targetData, int targetIndex, int length, int opacity256) {
+        for (int i = 0; i < length; i++) {
+            final int s = sourceData[sourceIndex + i];
+            final int d = targetData[targetIndex + i];
+
+            // Source alpha scaled by opacity, in the range 0..256
+            final int sa = ((s >>> ALPHA_SHIFT) * opacity256 + 128) >> 8;
+            final int a = sa + (sa >> 7);
+
+            final int r = mixComponent(d >>> RED_SHIFT & 0xFF,   s >>> RED_SHIFT & 0xFF,   a);
+            final int g = mixComponent(d >>> GREEN_SHIFT & 0xFF, s >>> GREEN_SHIFT & 0xFF, a);
+            final int b = mixComponent(d & 0xFF,                 s & 0xFF,                 a);
+            final int da = d >>> ALPHA_SHIFT;
+            final int outAlpha = da + (((255 - da) * a) >> 8);
+
+            targetData[targetIndex + i] = (outAlpha << ALPHA_SHIFT) | (r << RED_SHIFT) | (g << GREEN_SHIFT) | b;
+        }
+    }
+
+    private static int mixComponent(int destination, int source, int amount256) {
+        return destination + (((source - destination) * amount256) >> 8);
+    }
+
+    private static int toComponent(double value) {
+        // Same rounding as used by RawImage
+        return Math.max(0, Math.min(255, (int) (value * 256)));
+    }
+
+    private static int toComponent(float value) {
+        return Math.max(0, Math.min(255, (int) (value * 256f)));
+    }
+
+    private static int toFixedPoint8(double value) {
+        return (int) Math.round(Math.max(0.0, Math.min(1.0, value)) * 256);
+    }
+
+    private static int toFixedPoint16(double value) {
+        // Limit to a range where multiplying with a component can not overflow
+        return (int) Math.round(Math.max(0.0, Math.min(256.0, value)) * 65536);
+    }
+
+    private static void forRows(int startRow, int endRow, int rowLength, RangeTask task) {
+        final int minBandRows = Math.max(1, MIN_PIXELS_PER_BAND / rowLength);
+        ParallelRange.forRange(startRow, endRow, minBandRows, task);
+    }
+
+    /**
+     * A rectangle to copy from a source to a target image, clipped to both.
+     */
+    private static final class Region {
+        private final int sourceWidth;
+        private final int targetWidth;
+        private int sourceX;
+        private int sourceY;
+        private int targetX;
+        private int targetY;
+        private int width;
+        private int height;
+
+        private Region(RawImage source, int sourceX, int sourceY, int width, int height,
+                       RawImage target, int targetX, int targetY) {
+            notNull(source, "source");
+            notNull(target, "target");
+
+            sourceWidth = source.getWidth();
+            targetWidth = target.getWidth();
+
+            // Clip against the top left edges of both images
+            final int dx = Math.max(Math.max(-sourceX, -targetX), 0);
+            final int dy = Math.max(Math.max(-sourceY, -targetY), 0);
+            this.sourceX = sourceX + dx;
+            this.sourceY = sourceY + dy;
+            this.targetX = targetX + dx;
+            this.targetY = targetY + dy;
+
+            // Clip against the bottom right edges of both images
+            this.width = Math.min(width - dx, Math.min(source.getWidth() - this.sourceX, target.getWidth() - this.targetX));
+            this.height = Math.min(height - dy, Math.min(source.getHeight() - this.sourceY, target.getHeight() - this.targetY));
+        }
+
+        private boolean isEmpty() {
+            return width <= 0 || height <= 0;
+        }
+
+        private int sourceIndex(int row) {
+            return (sourceY + row) * sourceWidth + sourceX;
+        }
+
+        private int targetIndex(int row) {
+            return (targetY + row) * targetWidth + targetX;
+        }
+    }
+
+    private RawImageOps() {
+    }
+}
@@ -1,40 +1,107 @@
 package org.uiflow.desktop.rawimage;
 
 
+import org.flowutils.Check;
+
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A Swing Panel that shows a backing FastImage.
  * The image is either provided directly, or created with a renderer which recreates it whenever the panel is resized.
+ *
+ * When asynchronous rendering is enabled, the renderer is run on a background thread into a separate back image,
+ * while the panel keeps showing the last completed image.  The background thread never writes to the shown image.
+ * Renders that are made stale by a newer resize or reRender call are cancelled.
+ *
+ * With progressive rendering also enabled, the background thread first renders the image at a reduced resolution
+ * and shows it enlarged, then refines it in passes that double the resolution each time until the full resolution
+ * image is done.
+ *
+ * With incremental rendering enabled and a renderer that is an IncrementalRawImageRenderer, the image is rendered on
+ * the event dispatch thread a part at a time, spending at most a given time budget per repaint and scheduling
+ * repaints until the image is done.  This keeps the user interface responsive without needing a thread safe renderer.
+ *
+ * If the renderer is a RegionRawImageRenderer, parts of the image can be re-rendered with reRender(x, y, width, height).
+ *
+ * Images rendered by the panel reuse the same color data arrays when the panel is resized, and rendering after
+ * a resize can be delayed until the size has stayed the same for a while, to avoid rendering each intermediate
+ * size while the user drags a window border.
+ *
+ * The image can be shown at a different scale than its original size.  With mipmapping enabled, images shown zoomed
+ * out are drawn from a RawImageMipmap level close to the shown size, which gives smooth results with a drawing cost
+ * that depends on the shown size instead of the image size.
  */
 public class RawImagePanel extends JPanel {
 
+    private static final int DEFAULT_PROGRESSIVE_START_SCALE = 8;
+    private static final int DEFAULT_INCREMENTAL_TIME_BUDGET_MILLISECONDS = 10;
+
     private RawImageRenderer renderer;
     private RawImage rawImage = null;
 
     private boolean imagePainted = false;
+    private Rectangle reRenderRegion = null;
+
+    private boolean asynchronousRendering = false;
+    private boolean progressiveRendering = false;
+    private int progressiveStartScale = DEFAULT_PROGRESSIVE_START_SCALE;
+    private boolean incrementalRendering = false;
+    private int incrementalTimeBudgetMilliseconds = DEFAULT_INCREMENTAL_TIME_BUDGET_MILLISECONDS;
+    private boolean incrementalRenderingStarted = false;
+    private double imageScale = 1.0;
+    private boolean mipmapping = false;
+    private RawImageMipmap mipmap = null;
+    private boolean mipmapStale = false;
+    private ExecutorService renderExecutor = null;
+    private Future<?> pendingRender = null;
+    private int renderGeneration = 0;
+
+    // Store for the shown image
+    private RawImageStore frontStore = new RawImageStore();
+
+    // Stores that are neither shown nor being rendered into, taken by the render thread for each rendering pass
+    private final Deque<RawImageStore> freeStores = new ArrayDeque<RawImageStore>();
+
+    // Only used from the render thread
+    private final RawImageStore previewStore = new RawImageStore();
+
+    private final Timer resizeDebounceTimer;
 
     /**
      * Creates an empty RawImagePanel.  Use setRawImage or setRenderer to set content.
      */
     public RawImagePanel() {
+        // Used to wait until the size has settled before rendering
+        resizeDebounceTimer = new Timer(0, new ActionListener() {
+            @Override public void actionPerformed(ActionEvent e) {
+                onSizeSettled();
+            }
+        });
+        resizeDebounceTimer.setRepeats(false);
+
         // Listen to resizes, and re-render the image when a resize happened
         addComponentListener(new ComponentAdapter() {
                 public void componentResized(ComponentEvent e) {
-
-                    if (RawImagePanel.this.renderer != null) {
-                        final int width = getWidth();
-                        final int height = getHeight();
-
-                        // Create image if we have any size to work with.
-                        if (width > 0 && height > 0) rawImage = new RawImage(width, height);
-                        else rawImage = null;
+                    if (resizeDebounceTimer.getInitialDelay() > 0) {
+                        // Show the old image stretched until the size stops changing
+                        resizeDebounceTimer.restart();
+                        repaint();
+                    }
+                    else {
+                        onSizeSettled();
                     }
-
-                    reRender();
                 }
             });
 
@@ -87,32 +154,488 @@ public class RawImagePanel extends JPanel {
     public void setRawImage(RawImage rawImage) {
         this.rawImage = rawImage;
         renderer = null;
+        mipmap = null;
         reRender();
     }
 
+    /**
+     * @return true if the renderer is run on a background thread.
+     */
+    public boolean isAsynchronousRendering() {
+        return asynchronousRendering;
+    }
+
+    /**
+     * @param asynchronousRendering if true, the renderer is run on a background thread instead of the event dispatch thread,
+     *                              and the last completed image is shown, scaled to the panel size if needed,
+     *                              until the new one is ready.
+     *                              The renderer is only used by one rendering at a time, but that rendering will not be
+     *                              on the event dispatch thread.  When switching back to synchronous rendering, this
+     *                              waits until any render still running in the background has stopped.
+     */
+    public void setAsynchronousRendering(boolean asynchronousRendering) {
+        if (this.asynchronousRendering != asynchronousRendering) {
+            this.asynchronousRendering = asynchronousRendering;
+
+            if (!asynchronousRendering) {
+                // The renderer and the images it renders into must not be used by two threads at once
+                cancelAsynchronousRender();
+                waitForRenderThread();
+            }
+
+            if (!asynchronousRendering && renderer != null && rawImage != null &&
+                (rawImage.getWidth() != getWidth() || rawImage.getHeight() != getHeight())) {
+                // The last asynchronously rendered image may have the wrong size
+                rawImage = getWidth() > 0 && getHeight() > 0 ? frontStore.getImage(getWidth(), getHeight()) : null;
+            }
+
+            reRender();
+        }
+    }
+
+    /**
+     * @return true if asynchronous rendering first shows low resolution versions of the image.
+     */
+    public boolean isProgressiveRendering() {
+        return progressiveRendering;
+    }
+
+    /**
+     * @param progressiveRendering if true, asynchronous rendering first renders and shows the image at a lower resolution,
+     *                             and then refines it in passes until it is at full resolution.
+     *                             Refinement is abandoned when a new render is started.
+     *                             Only has an effect when asynchronous rendering is enabled.
+     */
+    public void setProgressiveRendering(boolean progressiveRendering) {
+        if (this.progressiveRendering != progressiveRendering) {
+            this.progressiveRendering = progressiveRendering;
+            reRender();
+        }
+    }
+
+    /**
+     * @return how many times smaller the resolution of the first progressive rendering pass is than the full resolution.
+     */
+    public int getProgressiveStartScale() {
+        return progressiveStartScale;
+    }
+
+    /**
+     * @param progressiveStartScale how many times smaller the resolution of the first progressive rendering pass is
+     *                              than the full resolution.  Each following pass halves it, until it reaches one.
+     *                              Defaults to 8.
+     */
+    public void setProgressiveStartScale(int progressiveStartScale) {
+        Check.positive(progressiveStartScale, "progressiveStartScale");
+        this.progressiveStartScale = progressiveStartScale;
+    }
+
+    /**
+     * @return true if the image is rendered a part at a time on the event dispatch thread.
+     */
+    public boolean isIncrementalRendering() {
+        return incrementalRendering;
+    }
+
+    /**
+     * @param incrementalRendering if true, and the renderer is an IncrementalRawImageRenderer, the image is rendered
+     *                             a part at a time on the event dispatch thread, spending at most the incremental time
+     *                             budget on each repaint, and repainting until the image is done.
+     *                             Only has an effect when asynchronous rendering is disabled.
+     */
+    public void setIncrementalRendering(boolean incrementalRendering) {
+        if (this.incrementalRendering != incrementalRendering) {
+            this.incrementalRendering = incrementalRendering;
+            reRender();
+        }
+    }
+
+    /**
+     * @return approximate number of milliseconds to spend on incremental rendering in each repaint.
+     */
+    public int getIncrementalTimeBudget() {
+        return incrementalTimeBudgetMilliseconds;
+    }
+
+    /**
+     * @param incrementalTimeBudgetMilliseconds approximate number of milliseconds to spend on incremental rendering in
+     *                                          each repaint.  Defaults to 10 milliseconds, which leaves time for other
+     *                                          work within a 60 frames per second frame.
+     */
+    public void setIncrementalTimeBudget(int incrementalTimeBudgetMilliseconds) {
+        Check.positive(incrementalTimeBudgetMilliseconds, "incrementalTimeBudgetMilliseconds");
+        this.incrementalTimeBudgetMilliseconds = incrementalTimeBudgetMilliseconds;
+    }
+
+    /**
+     * @return scale the image is shown at, 1 is the original size.
+     */
+    public double getImageScale() {
+        return imageScale;
+    }
+
+    /**
+     * @param imageScale scale the image is shown at, 1 is the original size, 0.5 half the size, and so on.
+     *                   The image is drawn from the top left corner of the panel.  Mostly useful for large images
+     *                   set with setRawImage, as rendered images are already the size of the panel.  Defaults to 1.
+     */
+    public void setImageScale(double imageScale) {
+        Check.positive(imageScale, "imageScale");
+        this.imageScale = imageScale;
+        repaint();
+    }
+
+    /**
+     * @return true if images shown at a scale below one are drawn from a mipmap pyramid.
+     */
+    public boolean isMipmapping() {
+        return mipmapping;
+    }
+
+    /**
+     * @param mipmapping if true, images shown at a scale below one are drawn from the mipmap level closest to the
+     *                   shown size.  The mipmap is kept up to date when the image is re-rendered or when changes
+     *                   are shown with repaintChanges.  Uses about a third more memory than the image itself.
+     */
+    public void setMipmapping(boolean mipmapping) {
+        this.mipmapping = mipmapping;
+        if (!mipmapping) mipmap = null;
+        repaint();
+    }
+
+    /**
+     * @return number of milliseconds the panel size has to stay the same after a resize before the image is re-rendered.
+     */
+    public int getResizeDebounceDelay() {
+        return resizeDebounceTimer.getInitialDelay();
+    }
+
+    /**
+     * @param resizeDebounceDelay number of milliseconds the panel size has to stay the same after a resize before
+     *                            the image is re-rendered.  Until then the previous image is shown stretched to the
+     *                            panel size.  Zero re-renders immediately on each resize, which is the default.
+     */
+    public void setResizeDebounceDelay(int resizeDebounceDelay) {
+        Check.positiveOrZero(resizeDebounceDelay, "resizeDebounceDelay");
+        resizeDebounceTimer.setInitialDelay(resizeDebounceDelay);
+    }
+
     /**
      * Triggers a re-render of the image and a repaint of this panel.
      */
     public void reRender() {
         imagePainted = false;
+        reRenderRegion = null;
+        incrementalRenderingStarted = false;
+        mipmapStale = true;
+
+        if (asynchronousRendering && renderer != null) {
+            startAsynchronousRender();
+        }
+        else {
+            cancelAsynchronousRender();
+        }
+
         repaint();
     }
 
+    /**
+     * Triggers a re-render of a part of the image, and a repaint of that part of the panel.
+     * Only the specified region is re-rendered if the renderer is a RegionRawImageRenderer and asynchronous rendering is off,
+     * otherwise the whole image is re-rendered.
+     * Several regions requested before the next repaint are combined.
+     */
+    public void reRender(int x, int y, int width, int height) {
+        if (asynchronousRendering || !(renderer instanceof RegionRawImageRenderer)) {
+            reRender();
+        }
+        else {
+            if (reRenderRegion == null) reRenderRegion = new Rectangle(x, y, width, height);
+            else reRenderRegion.add(new Rectangle(x, y, width, height));
+
+            repaintImageRegion(x, y, width, height);
+        }
+    }
+
+    /**
+     * Triggers a re-render of a part of the image, and a repaint of that part of the panel.
+     * See reRender(x, y, width, height).
+     */
+    public void reRender(Rectangle region) {
+        reRender(region.x, region.y, region.width, region.height);
+    }
+
+    /**
+     * Flushes any changes made to the shown raw image, and repaints only the parts of the panel that changed.
+     * Use this instead of reRender when the raw image was edited directly and only small parts of it changed.
+     */
+    public void repaintChanges() {
+        if (rawImage != null && rawImage.isDirty()) {
+            if (mipmap != null && mipmap.getSource() == rawImage) mipmap.updateDirtyRegions();
+
+            for (Rectangle region : rawImage.getDirtyRegions()) {
+                repaintImageRegion(region.x, region.y, region.width, region.height);
+            }
+
+            rawImage.flush();
+        }
+    }
+
     public void paintComponent(Graphics g) {
         if (rawImage != null) {
 
             // Re-render the image if needed
-            if (!imagePainted && renderer != null) {
+            if (!imagePainted && incrementalRendering && renderer instanceof IncrementalRawImageRenderer && !asynchronousRendering) {
+                final IncrementalRawImageRenderer incrementalRenderer = (IncrementalRawImageRenderer) renderer;
+                if (!incrementalRenderingStarted) {
+                    incrementalRenderer.restartIncrementalRendering();
+                    incrementalRenderingStarted = true;
+                }
+
+                // Render a part of the image, and continue in the next repaint if it isn't done
+                mipmapStale = true;
+                if (incrementalRenderer.renderIncrementally(rawImage, incrementalTimeBudgetMilliseconds * 1000000L)) {
+                    imagePainted = true;
+                    reRenderRegion = null;
+                    incrementalRenderingStarted = false;
+                }
+                else {
+                    repaint();
+                }
+            }
+            else if (!imagePainted && renderer != null && !asynchronousRendering) {
                 renderer.renderImage(rawImage);
                 imagePainted = true;
+                reRenderRegion = null;
 
                 // Flush the image to be sure we have the latest version
-                rawImage.getImage().flush();
+                rawImage.flush();
+            }
+            else if (reRenderRegion != null && renderer instanceof RegionRawImageRenderer && !asynchronousRendering) {
+                // Only re-render the requested part
+                ((RegionRawImageRenderer) renderer).renderRegion(rawImage,
+                                                                 reRenderRegion.x,
+                                                                 reRenderRegion.y,
+                                                                 reRenderRegion.width,
+                                                                 reRenderRegion.height);
+                if (mipmap != null && mipmap.getSource() == rawImage) {
+                    mipmap.update(reRenderRegion.x, reRenderRegion.y, reRenderRegion.width, reRenderRegion.height);
+                }
+                reRenderRegion = null;
+                rawImage.flush();
             }
 
-            // Draw the renderer image to the panel
-            rawImage.renderToGraphics(g);
+            if (renderer != null &&
+                (rawImage.getWidth() != getWidth() || rawImage.getHeight() != getHeight())) {
+                // Stretch the last completed image over the panel until a render in the correct size is done
+                g.drawImage(rawImage.getImage(), 0, 0, getWidth(), getHeight(), null);
+            }
+            else if (imageScale != 1.0) {
+                drawScaledImage(g);
+            }
+            else {
+                // Draw the renderer image to the panel
+                rawImage.renderToGraphics(g);
+            }
+        }
+    }
+
+    /**
+     * Repaints the part of the panel that shows the specified region of the image, taking the image scale into account.
+     */
+    private void repaintImageRegion(int x, int y, int width, int height) {
+        if (imageScale == 1.0) {
+            repaint(x, y, width, height);
+        }
+        else {
+            // Round outwards, and include a pixel of the image on each side, as the interpolation blends neighbouring pixels
+            final int panelX1 = (int) Math.floor((x - 1.0) * imageScale);
+            final int panelY1 = (int) Math.floor((y - 1.0) * imageScale);
+            final int panelX2 = (int) Math.ceil(((double) x + width + 1) * imageScale);
+            final int panelY2 = (int) Math.ceil(((double) y + height + 1) * imageScale);
+            repaint(panelX1, panelY1, panelX2 - panelX1, panelY2 - panelY1);
         }
     }
 
-}
\ No newline at end of file
+    private void drawScaledImage(Graphics g) {
+        Image image = rawImage.getImage();
+
+        if (mipmapping && imageScale < 1.0) {
+            // Use the mipmap level closest to the shown size
+            if (mipmap == null) {
+                mipmap = new RawImageMipmap(rawImage);
+            }
+            else if (mipmap.getSource() != rawImage) {
+                // Reuses the levels when the swapped in image has the same size
+                mipmap.setSource(rawImage);
+            }
+            else if (mipmapStale) {
+                mipmap.updateAll();
+            }
+            mipmapStale = false;
+
+            final RawImage level = mipmap.getLevel(mipmap.getLevelForScale(imageScale));
+            level.flush();
+            image = level.getImage();
+        }
+
+        final Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(image, 0, 0,
+                         (int) Math.round(rawImage.getWidth() * imageScale),
+                         (int) Math.round(rawImage.getHeight() * imageScale),
+                         null);
+        }
+        finally {
+            g2.dispose();
+        }
+    }
+
+    private void onSizeSettled() {
+        resizeDebounceTimer.stop();
+
+        // In asynchronous mode the old image is shown until the render in the new size is done
+        if (renderer != null && !asynchronousRendering) {
+            final int width = getWidth();
+            final int height = getHeight();
+
+            // Get image if we have any size to work with.
+            if (width > 0 && height > 0) rawImage = frontStore.getImage(width, height);
+            else rawImage = null;
+        }
+
+        reRender();
+    }
+
+    private void startAsynchronousRender() {
+        cancelAsynchronousRender();
+
+        final int width = getWidth();
+        final int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+
+        final int generation = renderGeneration;
+        final RawImageRenderer renderer = this.renderer;
+        final int startScale = progressiveRendering ? progressiveStartScale : 1;
+        pendingRender = getRenderExecutor().submit(new Runnable() {
+            @Override public void run() {
+                // Skip renders that went stale while waiting in the queue
+                if (Thread.currentThread().isInterrupted()) return;
+
+                for (int scale = startScale; scale >= 1; scale /= 2) {
+                    // Each pass gets its own store, as the previous one may be shown by now
+                    final RawImageStore store = takeFreeStore();
+                    final RawImage image = store.getImage(width, height);
+
+                    if (scale > 1) {
+                        // Render a preview at lower resolution and enlarge it
+                        final RawImage previewImage = previewStore.getImage((width + scale - 1) / scale,
+                                                                            (height + scale - 1) / scale);
+                        renderer.renderImage(previewImage);
+                        if (Thread.currentThread().isInterrupted()) {
+                            returnFreeStore(store);
+                            return;
+                        }
+
+                        image.scaleUpFrom(previewImage, scale);
+                        image.flush();
+                    }
+                    else {
+                        renderer.renderImage(image);
+                    }
+
+                    // Rendering may have been aborted part way
+                    if (Thread.currentThread().isInterrupted()) {
+                        returnFreeStore(store);
+                        return;
+                    }
+
+                    final boolean finalPass = scale == 1;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override public void run() {
+                            showRenderedImage(generation, store, image, finalPass);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void showRenderedImage(int generation, RawImageStore store, RawImage image, boolean finalPass) {
+        if (generation == renderGeneration && asynchronousRendering) {
+            // Swap the rendered back image to the front, the previously shown store can be rendered into again
+            returnFreeStore(frontStore);
+            frontStore = store;
+            rawImage = image;
+            imagePainted = true;
+            mipmapStale = true;
+            if (finalPass) pendingRender = null;
+            repaint();
+        }
+        else {
+            returnFreeStore(store);
+        }
+    }
+
+    /**
+     * @return a store that is neither shown nor rendered into, creating one if needed.
+     */
+    private RawImageStore takeFreeStore() {
+        synchronized (freeStores) {
+            final RawImageStore store = freeStores.pollFirst();
+            return store != null ? store : new RawImageStore();
+        }
+    }
+
+    private void returnFreeStore(RawImageStore store) {
+        synchronized (freeStores) {
+            freeStores.addFirst(store);
+        }
+    }
+
+    private void cancelAsynchronousRender() {
+        // Any render in progress or queued is now stale
+        renderGeneration++;
+
+        if (pendingRender != null) {
+            pendingRender.cancel(true);
+            pendingRender = null;
+        }
+    }
+
+    /**
+     * Blocks until the render thread has finished any render that it is running, including cancelled ones that have
+     * not noticed the interruption yet.
+     */
+    private void waitForRenderThread() {
+        if (renderExecutor == null) return;
+
+        // The executor has a single thread, so the marker task runs only after the earlier renders have exited
+        try {
+            renderExecutor.submit(new Runnable() {
+                @Override public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not wait for the render thread: " + e.getMessage(), e);
+        }
+    }
+
+    private ExecutorService getRenderExecutor() {
+        if (renderExecutor == null) {
+            renderExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "RawImagePanel renderer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return renderExecutor;
+    }
+
+}
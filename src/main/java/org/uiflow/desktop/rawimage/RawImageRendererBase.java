@@ -2,40 +2,22 @@ package org.uiflow.desktop.rawimage;
 
 /**
  * Abstract base class that loops through the pixels and renders each.
+ *
+ * Implementations that can share calculations between neighbouring pixels on a row should
+ * extend RawImageSpanRendererBase directly instead.
  */
-public abstract class RawImageRendererBase implements RawImageRenderer {
+public abstract class RawImageRendererBase extends RawImageSpanRendererBase {
 
-    @Override public final void renderImage(RawImage target) {
-        final int w = target.getWidth();
-        final int h = target.getHeight();
-        final int[] buffer = target.getBuffer();
-
-        prepareRendering(target, w, h);
-
-        // Render pixels
-        int index = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                final int pixelColor = getPixelColor(x, y, w, h);
-                buffer[index++] = pixelColor;
-            }
+    @Override protected final void renderSpan(int[] buffer, int offset, int x, int y, int length, int totalWidth, int totalHeight) {
+        final int end = x + length;
+        for (int xp = x; xp < end; xp++) {
+            buffer[offset++] = getPixelColor(xp, y, totalWidth, totalHeight);
         }
-
-        finishRendering(target, w, h);
-
-        target.flush();
     }
 
-    /**
-     * Called before pixels are rendered.
-     * @param target target that will be rendered to.
-     * @param width target width
-     * @param height target height
-     */
-    protected void prepareRendering(RawImage target, int width, int height) {}
-
     /**
      * Called for each pixel when rendering the image.
+     * May be called from several threads at once if isThreadSafe returns true.
      * @param x pixel x coordinate to get the color of
      * @param y pixel y coordinate to get the color of
      * @param totalWidth width of the picture that is rendered to.
@@ -44,11 +26,4 @@ public abstract class RawImageRendererBase implements RawImageRenderer {
      */
     protected abstract int getPixelColor(int x, int y, int totalWidth, int totalHeight);
 
-    /**
-     * Called after all pixels are rendered.
-     * @param target target that was rendered to.
-     * @param width target width
-     * @param height target height
-     */
-    protected void finishRendering(RawImage target, int width, int height) {}
 }
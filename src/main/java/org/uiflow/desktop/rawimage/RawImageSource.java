@@ -0,0 +1,33 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * Something that color data can be copied from a region at a time.
+ * Used for showing parts of images that are too large to show, or even keep in a RawImage, all at once.
+ */
+public interface RawImageSource {
+
+    /**
+     * @return width of the source in pixels.
+     */
+    int getWidth();
+
+    /**
+     * @return height of the source in pixels.
+     */
+    int getHeight();
+
+    /**
+     * Copies the color data of a region of the source to an array.
+     * The region must be inside the source.
+     * May be called from several threads at once.
+     *
+     * @param x left edge of the region to copy.
+     * @param y top edge of the region to copy.
+     * @param width width of the region to copy.
+     * @param height height of the region to copy.
+     * @param target array to copy the color data to, ordered by row, in the same format as used by RawImage.
+     * @param targetOffset index in the target array to copy the upper left corner of the region to.
+     * @param targetScanlineStride distance in the target array between the starts of two consecutive rows.
+     */
+    void copyRegion(int x, int y, int width, int height, int[] target, int targetOffset, int targetScanlineStride);
+}
@@ -0,0 +1,204 @@
+package org.uiflow.desktop.rawimage;
+
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Abstract base class that renders an image one horizontal span of pixels at a time.
+ * Allows implementations to calculate things that are the same for a whole row only once,
+ * and to write the pixels of the span in a tight loop.
+ *
+ * If the renderer declares itself thread safe by overriding isThreadSafe, large images are split into bands of rows
+ * that are rendered in parallel on a ForkJoinPool.
+ *
+ * Parts of the image can be re-rendered with renderRegion, which only renders the spans inside the region.
+ *
+ * The image can also be rendered incrementally, a number of rows at a time until a time budget is spent,
+ * using renderIncrementally.  Incremental rendering is always done in the calling thread.
+ *
+ * renderImage and renderRegion flush the target when they are done.  If the thread calling them is interrupted,
+ * rendering stops at the next row, leaving the rest of the image unrendered and the target unflushed.
+ * finishRendering is still called in that case.
+ */
+public abstract class RawImageSpanRendererBase implements RegionRawImageRenderer, IncrementalRawImageRenderer {
+
+    /**
+     * Approximate minimum number of pixels to render in one band when rendering in parallel.
+     * Smaller bands would spend more time on task overhead than on rendering.
+     */
+    private static final int MIN_PIXELS_PER_BAND = 16 * 1024;
+
+    private boolean parallelRenderingEnabled = true;
+    private ForkJoinPool forkJoinPool = null;
+
+    // Progress of incremental rendering
+    private RawImage incrementalTarget = null;
+    private int incrementalNextRow = 0;
+
+    @Override public final void renderImage(RawImage target) {
+        renderRegion(target, 0, 0, target.getWidth(), target.getHeight());
+    }
+
+    @Override public final void renderRegion(RawImage target, int x, int y, int width, int height) {
+        final int w = target.getWidth();
+        final int h = target.getHeight();
+
+        // Clip region to target
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = Math.min(x + width, w);
+        final int y2 = Math.min(y + height, h);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        final int[] buffer = target.getUntrackedBuffer();
+        final Thread renderThread = Thread.currentThread();
+
+        prepareRendering(target, w, h);
+
+        // Render pixels
+        final int minBandRows = Math.max(1, MIN_PIXELS_PER_BAND / (x2 - x1));
+        if (parallelRenderingEnabled && isThreadSafe() && y2 - y1 > minBandRows) {
+            ParallelRange.forRange(forkJoinPool, y1, y2, minBandRows, new RangeTask() {
+                @Override public void process(int start, int end) {
+                    renderRows(buffer, w, h, x1, x2, start, end, renderThread);
+                }
+            });
+        }
+        else {
+            renderRows(buffer, w, h, x1, x2, y1, y2, renderThread);
+        }
+
+        finishRendering(target, w, h);
+
+        target.markDirty(x1, y1, x2 - x1, y2 - y1);
+        if (!renderThread.isInterrupted()) target.flush();
+    }
+
+    /**
+     * Renders rows of the target until the time budget is spent or the image is done.
+     * prepareRendering is called when a new rendering of the image is started, and finishRendering when it is completed.
+     */
+    @Override public final boolean renderIncrementally(RawImage target, long timeBudgetNanos) {
+        final long deadline = System.nanoTime() + timeBudgetNanos;
+        final int w = target.getWidth();
+        final int h = target.getHeight();
+
+        if (target != incrementalTarget) {
+            // Start a new rendering
+            incrementalTarget = target;
+            incrementalNextRow = 0;
+            prepareRendering(target, w, h);
+        }
+
+        // Render at least one row each call, so that rendering always progresses
+        final int[] buffer = target.getUntrackedBuffer();
+        final int startRow = incrementalNextRow;
+        int row = startRow;
+        do {
+            renderSpan(buffer, row * w, 0, row, w, w, h);
+            row++;
+        } while (row < h && System.nanoTime() < deadline);
+
+        incrementalNextRow = row;
+        target.markDirty(0, startRow, w, row - startRow);
+
+        final boolean done = row >= h;
+        if (done) {
+            incrementalTarget = null;
+            finishRendering(target, w, h);
+        }
+
+        target.flush();
+
+        return done;
+    }
+
+    /**
+     * Makes the next renderIncrementally call start from the beginning of the image.
+     * finishRendering is not called for an incremental rendering that is restarted before it is completed.
+     */
+    @Override public final void restartIncrementalRendering() {
+        incrementalTarget = null;
+    }
+
+    /**
+     * @return true if large images are rendered in parallel when the renderer is thread safe.  Defaults to true.
+     */
+    public final boolean isParallelRenderingEnabled() {
+        return parallelRenderingEnabled;
+    }
+
+    /**
+     * @param parallelRenderingEnabled if true, large images are rendered in parallel when the renderer is thread safe.
+     *                                 If false, all pixels are always rendered in the calling thread.
+     */
+    public final void setParallelRenderingEnabled(boolean parallelRenderingEnabled) {
+        this.parallelRenderingEnabled = parallelRenderingEnabled;
+    }
+
+    /**
+     * @return the pool used for parallel rendering, or null if the shared default pool is used.
+     */
+    public final ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * @param forkJoinPool the pool to use for parallel rendering, or null to use the shared default pool.
+     */
+    public final void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Override and return true if renderSpan can be called concurrently from several threads,
+     * in which case large images are rendered in parallel.
+     * prepareRendering and finishRendering are still called only once per rendering, from the calling thread.
+     *
+     * @return true if renderSpan is thread safe.  Defaults to false.
+     */
+    protected boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Called before pixels are rendered, also when only a region of the image is rendered.
+     * @param target target that will be rendered to.
+     * @param width target width
+     * @param height target height
+     */
+    protected void prepareRendering(RawImage target, int width, int height) {}
+
+    /**
+     * Called to render a horizontal run of pixels on one row.
+     * May be called from several threads at once if isThreadSafe returns true, but never for overlapping spans.
+     *
+     * @param buffer buffer to write the color codes to, containing RGBA components in a 32 bit int.
+     * @param offset index in the buffer of the first pixel of the span.
+     * @param x x coordinate of the first pixel of the span.
+     * @param y y coordinate of the row that the span is on.
+     * @param length number of pixels in the span.
+     * @param totalWidth width of the picture that is rendered to.
+     * @param totalHeight height of the picture that is rendered to.
+     */
+    protected abstract void renderSpan(int[] buffer, int offset, int x, int y, int length, int totalWidth, int totalHeight);
+
+    /**
+     * Called after all pixels (or all pixels of the rendered region) are rendered.
+     * @param target target that was rendered to.
+     * @param width target width
+     * @param height target height
+     */
+    protected void finishRendering(RawImage target, int width, int height) {}
+
+    private void renderRows(int[] buffer, int w, int h, int startX, int endX, int startRow, int endRow, Thread renderThread) {
+        for (int y = startRow; y < endRow; y++) {
+            // Stop if the rendering was cancelled
+            if (renderThread.isInterrupted()) return;
+
+            renderSpan(buffer, y * w + startX, startX, y, endX - startX, w, h);
+        }
+    }
+}
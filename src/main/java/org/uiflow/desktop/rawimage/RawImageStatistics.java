@@ -0,0 +1,219 @@
+package org.uiflow.desktop.rawimage;
+
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Histograms and statistics for each channel of a RawImage or a region of it, for example for automatic levels.
+ *
+ * The statistics are calculated directly from the color data, in parallel bands of rows that each count into their
+ * own partial histograms, which are summed at the end.  An instance can be updated again for each frame of a live
+ * view, reusing its histogram arrays.  Not thread safe.
+ */
+public final class RawImageStatistics {
+
+    private static final int LEVELS = 256;
+    private static final int CHANNELS = ImageChannel.values().length;
+    private static final int MIN_PIXELS_PER_BAND = 64 * 1024;
+
+    // Rec. 709 luminance weights, as fixed point numbers with 8 fractional bits
+    private static final int RED_WEIGHT = 54;
+    private static final int GREEN_WEIGHT = 183;
+    private static final int BLUE_WEIGHT = 19;
+
+    private final int[] histograms = new int[CHANNELS * LEVELS];
+    private final int[] minimums = new int[CHANNELS];
+    private final int[] maximums = new int[CHANNELS];
+    private final double[] means = new double[CHANNELS];
+    private int[][] partialHistograms = new int[0][];
+    private long pixelCount = 0;
+
+    /**
+     * Creates statistics for an empty region.  Call update to calculate them for an image.
+     */
+    public RawImageStatistics() {
+        calculateSummaries();
+    }
+
+    /**
+     * Calculates the statistics for the whole image.
+     */
+    public void update(RawImage image) {
+        notNull(image, "image");
+        update(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Calculates the statistics for a region of the image.  The region is clipped to the image.
+     */
+    public void update(RawImage image, int x, int y, int width, int height) {
+        notNull(image, "image");
+
+        final int imageWidth = image.getWidth();
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = (int) Math.min((long) x + width, imageWidth);
+        final int y2 = (int) Math.min((long) y + height, image.getHeight());
+
+        Arrays.fill(histograms, 0);
+        pixelCount = 0;
+
+        if (x1 < x2 && y1 < y2) {
+            pixelCount = (long) (x2 - x1) * (y2 - y1);
+
+            // Split the rows into bands with their own partial histograms
+            final int rowsPerBand = Math.max(1, MIN_PIXELS_PER_BAND / (x2 - x1));
+            final int bandCount = (y2 - y1 + rowsPerBand - 1) / rowsPerBand;
+            if (partialHistograms.length < bandCount) {
+                partialHistograms = Arrays.copyOf(partialHistograms, bandCount);
+            }
+            for (int band = 0; band < bandCount; band++) {
+                if (partialHistograms[band] == null) partialHistograms[band] = new int[CHANNELS * LEVELS];
+                else Arrays.fill(partialHistograms[band], 0);
+            }
+
+            final int[] data = image.getUntrackedBuffer();
+            final int[][] partials = partialHistograms;
+            ParallelRange.forRange(0, bandCount, 1, new RangeTask() {
+                @Override public void process(int start, int end) {
+                    for (int band = start; band < end; band++) {
+                        final int bandStart = y1 + band * rowsPerBand;
+                        countRows(data, imageWidth, x1, x2, bandStart, Math.min(bandStart + rowsPerBand, y2), partials[band]);
+                    }
+                }
+            });
+
+            for (int band = 0; band < bandCount; band++) {
+                final int[] partial = partialHistograms[band];
+                for (int i = 0; i < histograms.length; i++) {
+                    histograms[i] += partial[i];
+                }
+            }
+        }
+
+        calculateSummaries();
+    }
+
+    /**
+     * @return number of pixels the statistics were calculated from.
+     */
+    public long getPixelCount() {
+        return pixelCount;
+    }
+
+    /**
+     * @return number of pixels with the specified value, 0..255, in the channel.
+     */
+    public int getCount(ImageChannel channel, int value) {
+        notNull(channel, "channel");
+        if (value < 0 || value >= LEVELS) throw new IllegalArgumentException("The value should be in the range 0 to 255, but it was " + value);
+
+        return histograms[channel.ordinal() * LEVELS + value];
+    }
+
+    /**
+     * Copies the histogram of a channel.
+     * @param channel channel to get the histogram for.
+     * @param target array with room for 256 values, the number of pixels with each channel value is written to it.
+     *               If null, a new array is created.
+     * @return the array the histogram was written to.
+     */
+    public int[] getHistogram(ImageChannel channel, int[] target) {
+        notNull(channel, "channel");
+        if (target == null) target = new int[LEVELS];
+        if (target.length < LEVELS) throw new IllegalArgumentException("The target array should have room for " + LEVELS + " values, but it had length " + target.length);
+
+        System.arraycopy(histograms, channel.ordinal() * LEVELS, target, 0, LEVELS);
+        return target;
+    }
+
+    /**
+     * @return smallest value of the channel, 0..255, or 0 if there were no pixels.
+     */
+    public int getMinimum(ImageChannel channel) {
+        return minimums[channel.ordinal()];
+    }
+
+    /**
+     * @return largest value of the channel, 0..255, or 0 if there were no pixels.
+     */
+    public int getMaximum(ImageChannel channel) {
+        return maximums[channel.ordinal()];
+    }
+
+    /**
+     * @return average value of the channel, 0..255, or 0 if there were no pixels.
+     */
+    public double getMean(ImageChannel channel) {
+        return means[channel.ordinal()];
+    }
+
+    /**
+     * @param channel channel to get the percentile for.
+     * @param fraction fraction of the pixels, 0..1, e.g. 0.5 for the median, or 0.01 and 0.99 for robust levels.
+     * @return the smallest channel value, 0..255, such that at least the given fraction of the pixels have that value or less.
+     *         0 if there were no pixels.
+     */
+    public int getPercentile(ImageChannel channel, double fraction) {
+        notNull(channel, "channel");
+        if (!(fraction >= 0 && fraction <= 1)) throw new IllegalArgumentException("The fraction should be in the range 0 to 1, but it was " + fraction);
+        if (pixelCount == 0) return 0;
+
+        final long threshold = Math.max(1, (long) Math.ceil(fraction * pixelCount));
+        final int offset = channel.ordinal() * LEVELS;
+        long count = 0;
+        for (int value = 0; value < LEVELS; value++) {
+            count += histograms[offset + value];
+            if (count >= threshold) return value;
+        }
+        return LEVELS - 1;
+    }
+
+    private static void countRows(int[] data, int width, int x1, int x2, int y1, int y2, int[] histogram) {
+        final int redOffset = ImageChannel.RED.ordinal() * LEVELS;
+        final int greenOffset = ImageChannel.GREEN.ordinal() * LEVELS;
+        final int blueOffset = ImageChannel.BLUE.ordinal() * LEVELS;
+        final int alphaOffset = ImageChannel.ALPHA.ordinal() * LEVELS;
+        final int luminanceOffset = ImageChannel.LUMINANCE.ordinal() * LEVELS;
+
+        for (int y = y1; y < y2; y++) {
+            final int rowStart = y * width;
+            for (int i = rowStart + x1; i < rowStart + x2; i++) {
+                final int color = data[i];
+                final int r = color >>> RawImageOps.RED_SHIFT & 0xFF;
+                final int g = color >>> RawImageOps.GREEN_SHIFT & 0xFF;
+                final int b = color & 0xFF;
+                histogram[redOffset + r]++;
+                histogram[greenOffset + g]++;
+                histogram[blueOffset + b]++;
+                histogram[alphaOffset + (color >>> RawImageOps.ALPHA_SHIFT)]++;
+                histogram[luminanceOffset + ((RED_WEIGHT * r + GREEN_WEIGHT * g + BLUE_WEIGHT * b + 128) >> 8)]++;
+            }
+        }
+    }
+
+    private void calculateSummaries() {
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            final int offset = channel * LEVELS;
+            int min = -1;
+            int max = 0;
+            long sum = 0;
+            for (int value = 0; value < LEVELS; value++) {
+                final int count = histograms[offset + value];
+                if (count > 0) {
+                    if (min < 0) min = value;
+                    max = value;
+                    sum += (long) count * value;
+                }
+            }
+
+            minimums[channel] = Math.max(min, 0);
+            maximums[channel] = max;
+            means[channel] = pixelCount == 0 ? 0 : (double) sum / pixelCount;
+        }
+    }
+}
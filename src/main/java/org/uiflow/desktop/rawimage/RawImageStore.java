@@ -0,0 +1,108 @@
+package org.uiflow.desktop.rawimage;
+
+import org.flowutils.Check;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Reusable backing store for RawImages whose size changes often, such as the image of a panel that is being resized.
+ * Keeps one color data array that grows in steps when more room is needed, and provides RawImage views of
+ * the current size that share it, so that resizing does not allocate a new array each time.
+ *
+ * The content of the image is undefined after the size changes.
+ */
+public final class RawImageStore {
+
+    /**
+     * Default number of pixels that the capacity is rounded up to when it grows.
+     */
+    private static final int DEFAULT_CAPACITY_STEP = 256 * 256;
+
+    /**
+     * The capacity grows at least by this factor, to avoid many small allocations when an image is gradually enlarged.
+     */
+    private static final double GROWTH_FACTOR = 1.5;
+
+    private final RawImageBackend backend;
+    private final int capacityStep;
+
+    private int[] buffer = null;
+    private RawImage image = null;
+
+    /**
+     * Creates a new store that provides images using the BUFFERED_IMAGE_RGB backend, which doesn't need to allocate
+     * any additional per image data either.
+     */
+    public RawImageStore() {
+        this(RawImageBackend.BUFFERED_IMAGE_RGB);
+    }
+
+    /**
+     * @param backend the type of image used to show the raw data.
+     */
+    public RawImageStore(RawImageBackend backend) {
+        this(backend, DEFAULT_CAPACITY_STEP);
+    }
+
+    /**
+     * @param backend the type of image used to show the raw data.
+     * @param capacityStep number of pixels that the capacity is rounded up to when it needs to grow.
+     */
+    public RawImageStore(RawImageBackend backend, int capacityStep) {
+        notNull(backend, "backend");
+        Check.positive(capacityStep, "capacityStep");
+
+        this.backend = backend;
+        this.capacityStep = capacityStep;
+    }
+
+    /**
+     * @return a RawImage of the specified size that uses the shared array of this store.
+     *         The same image is returned as for the previous call if the size is the same.
+     *         Any images previously returned with other sizes should no longer be used, as they share the same array.
+     */
+    public RawImage getImage(int width, int height) {
+        Check.positive(width, "width");
+        Check.positive(height, "height");
+
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            ensureCapacity(width * height);
+            image = new RawImage(width, height, buffer, backend);
+        }
+
+        return image;
+    }
+
+    /**
+     * @return the image last returned by getImage, or null if none has been requested yet.
+     */
+    public RawImage getCurrentImage() {
+        return image;
+    }
+
+    /**
+     * @return number of pixels that fit in the currently allocated array.
+     */
+    public int getCapacity() {
+        return buffer == null ? 0 : buffer.length;
+    }
+
+    /**
+     * Releases the allocated array.  The next call to getImage allocates a new one.
+     */
+    public void release() {
+        buffer = null;
+        image = null;
+    }
+
+    private void ensureCapacity(int pixelCount) {
+        if (buffer == null || buffer.length < pixelCount) {
+            long capacity = Math.max(pixelCount, (long) (getCapacity() * GROWTH_FACTOR));
+
+            // Round up to the capacity step
+            capacity = (capacity + capacityStep - 1) / capacityStep * capacityStep;
+
+            buffer = new int[(int) Math.min(capacity, Integer.MAX_VALUE - 8)];
+        }
+    }
+}
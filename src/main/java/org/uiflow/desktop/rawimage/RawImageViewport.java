@@ -0,0 +1,113 @@
+package org.uiflow.desktop.rawimage;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Renders the visible part of a large RawImageSource to a RawImage, copying only the pixels that are in view.
+ * Can be used as the renderer of a RawImagePanel, with the view position changed to pan around the source.
+ */
+public final class RawImageViewport implements RawImageRenderer {
+
+    private RawImageSource source;
+    private int viewX;
+    private int viewY;
+    private int backgroundColor;
+
+    /**
+     * @param source the source to show.
+     */
+    public RawImageViewport(RawImageSource source) {
+        this(source, 0, 0, 0xFF000000);
+    }
+
+    /**
+     * @param source the source to show.
+     * @param viewX x coordinate in the source that is shown at the left edge of the target.
+     * @param viewY y coordinate in the source that is shown at the top edge of the target.
+     * @param backgroundColor color code used for the parts of the target that are outside the source.
+     */
+    public RawImageViewport(RawImageSource source, int viewX, int viewY, int backgroundColor) {
+        setSource(source);
+        setViewPosition(viewX, viewY);
+        this.backgroundColor = backgroundColor;
+    }
+
+    /**
+     * @return the source that is shown.
+     */
+    public RawImageSource getSource() {
+        return source;
+    }
+
+    /**
+     * @param source the source to show.
+     */
+    public void setSource(RawImageSource source) {
+        notNull(source, "source");
+        this.source = source;
+    }
+
+    /**
+     * @return x coordinate in the source that is shown at the left edge of the target.
+     */
+    public int getViewX() {
+        return viewX;
+    }
+
+    /**
+     * @return y coordinate in the source that is shown at the top edge of the target.
+     */
+    public int getViewY() {
+        return viewY;
+    }
+
+    /**
+     * @param viewX x coordinate in the source that is shown at the left edge of the target.  May be outside the source.
+     * @param viewY y coordinate in the source that is shown at the top edge of the target.  May be outside the source.
+     */
+    public void setViewPosition(int viewX, int viewY) {
+        this.viewX = viewX;
+        this.viewY = viewY;
+    }
+
+    /**
+     * @return color code used for the parts of the target that are outside the source.
+     */
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * @param backgroundColor color code used for the parts of the target that are outside the source.
+     */
+    public void setBackgroundColor(int backgroundColor) {
+        this.backgroundColor = backgroundColor;
+    }
+
+    @Override public void renderImage(RawImage target) {
+        final int targetWidth = target.getWidth();
+        final int targetHeight = target.getHeight();
+
+        // Visible part of the source, in source coordinates
+        final int x1 = Math.max(viewX, 0);
+        final int y1 = Math.max(viewY, 0);
+        final int x2 = (int) Math.min((long) viewX + targetWidth, source.getWidth());
+        final int y2 = (int) Math.min((long) viewY + targetHeight, source.getHeight());
+
+        if (x1 >= x2 || y1 >= y2) {
+            // Nothing of the source is visible
+            target.clearToColor(backgroundColor);
+        }
+        else {
+            // Fill the background around the visible part, if any
+            if (x1 - viewX > 0 || y1 - viewY > 0 || x2 - viewX < targetWidth || y2 - viewY < targetHeight) {
+                target.clearToColor(backgroundColor);
+            }
+
+            final int targetOffset = (y1 - viewY) * targetWidth + (x1 - viewX);
+            source.copyRegion(x1, y1, x2 - x1, y2 - y1, target.getBuffer(), targetOffset, targetWidth);
+        }
+
+        target.flush();
+    }
+}
@@ -0,0 +1,476 @@
+package org.uiflow.desktop.rawimage;
+
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Draws lines, polygons, circles and spans directly on the color data of a RawImage, without going through Swing Graphics.
+ *
+ * Colors with an alpha value below 255 are blended over the existing content of the image.
+ * Shapes are clipped to the image, and drawing does not allocate any memory, apart from growing the internal
+ * scratch buffer when a polygon with more vertices than before is filled.
+ *
+ * A rasterizer is not thread safe, but each thread can use its own rasterizer, e.g. to draw to separate bands of an image.
+ * Drawing does not update the dirty regions of the image, as those are not thread safe either.  Instead the
+ * rasterizer keeps track of the area it has changed, and markChangesDirty marks it dirty in the image.
+ */
+public final class RawRasterizer {
+
+    private static final int INITIAL_CROSSING_CAPACITY = 16;
+
+    private RawImage target;
+    private int[] data;
+    private int width;
+    private int height;
+
+    // Bounds of the changed area, x2 and y2 are exclusive
+    private int changedX1;
+    private int changedY1;
+    private int changedX2;
+    private int changedY2;
+
+    // Scratch buffer for the x coordinates where polygon edges cross a scanline
+    private double[] crossings = new double[INITIAL_CROSSING_CAPACITY];
+
+    // Start and end parameters of the visible part of a line that is being clipped
+    private final double[] clipLimits = new double[2];
+
+    /**
+     * @param target image to draw on.
+     */
+    public RawRasterizer(RawImage target) {
+        setTarget(target);
+    }
+
+    /**
+     * @return image that is drawn on.
+     */
+    public RawImage getTarget() {
+        return target;
+    }
+
+    /**
+     * @param target image to draw on.  Any changes not yet marked dirty in the previous target are marked dirty first.
+     */
+    public void setTarget(RawImage target) {
+        notNull(target, "target");
+
+        if (this.target != null) markChangesDirty();
+
+        this.target = target;
+        data = target.getUntrackedBuffer();
+        width = target.getWidth();
+        height = target.getHeight();
+        clearChanges();
+    }
+
+    /**
+     * Marks the area changed since the last call dirty in the target image.
+     * Call from the thread that flushes the image, after the drawing threads are done.
+     */
+    public void markChangesDirty() {
+        if (changedX1 < changedX2 && changedY1 < changedY2) {
+            target.markDirty(changedX1, changedY1, changedX2 - changedX1, changedY2 - changedY1);
+        }
+        clearChanges();
+    }
+
+    /**
+     * Draws a pixel.
+     */
+    public void drawPixel(int x, int y, int colorCode) {
+        if (x >= 0 && x < width && y >= 0 && y < height) {
+            plot(x + y * width, colorCode);
+            includeChanged(x, y, x + 1, y + 1);
+        }
+    }
+
+    /**
+     * Draws a horizontal span of pixels.
+     * @param x left end of the span.
+     * @param y row of the span.
+     * @param length number of pixels in the span.
+     */
+    public void drawSpan(int x, int y, int length, int colorCode) {
+        fillSpan(y, x, x + length, colorCode);
+    }
+
+    /**
+     * Draws a one pixel wide line using the Bresenham algorithm.  Both end points are included.
+     * The line is clipped to the image first, so the time taken depends only on the visible part of the line.
+     */
+    public void drawLine(int x1, int y1, int x2, int y2, int colorCode) {
+        // Clip the line to the pixel centers of the image with the Liang-Barsky algorithm
+        final double deltaX = (double) x2 - x1;
+        final double deltaY = (double) y2 - y1;
+        final double[] limits = clipLimits;
+        limits[0] = 0;
+        limits[1] = 1;
+        if (!clipParameter(-deltaX, x1, limits) ||
+            !clipParameter(deltaX, width - 1.0 - x1, limits) ||
+            !clipParameter(-deltaY, y1, limits) ||
+            !clipParameter(deltaY, height - 1.0 - y1, limits)) return;
+
+        if (limits[1] < 1) {
+            x2 = clampToImage(Math.round(x1 + limits[1] * deltaX), width);
+            y2 = clampToImage(Math.round(y1 + limits[1] * deltaY), height);
+        }
+        if (limits[0] > 0) {
+            x1 = clampToImage(Math.round(x1 + limits[0] * deltaX), width);
+            y1 = clampToImage(Math.round(y1 + limits[0] * deltaY), height);
+        }
+
+        if (y1 == y2) {
+            fillSpan(y1, Math.min(x1, x2), Math.max(x1, x2) + 1, colorCode);
+            return;
+        }
+
+        final long dx = Math.abs((long) x2 - x1);
+        final long dy = -Math.abs((long) y2 - y1);
+        final int stepX = x1 < x2 ? 1 : -1;
+        final int stepY = y1 < y2 ? 1 : -1;
+
+        int x = x1;
+        int y = y1;
+        long error = dx + dy;
+        while (true) {
+            plotClipped(x, y, colorCode);
+
+            if (x == x2 && y == y2) break;
+
+            final long error2 = 2 * error;
+            if (error2 >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (error2 <= dx) {
+                error += dx;
+                y += stepY;
+            }
+        }
+
+        includeChanged(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2) + 1, Math.max(y1, y2) + 1);
+    }
+
+    /**
+     * Draws an anti-aliased one pixel wide line using the Xiaolin Wu algorithm.
+     * Pixel centers are at half coordinates, e.g. the center of the top left pixel is at (0.5, 0.5).
+     */
+    public void drawAntialiasedLine(double x1, double y1, double x2, double y2, int colorCode) {
+        // Work in coordinates where pixel centers are at integer coordinates
+        x1 -= 0.5;
+        y1 -= 0.5;
+        x2 -= 0.5;
+        y2 -= 0.5;
+
+        final boolean steep = Math.abs(y2 - y1) > Math.abs(x2 - x1);
+        if (steep) {
+            double t = x1; x1 = y1; y1 = t;
+            t = x2; x2 = y2; y2 = t;
+        }
+        if (x1 > x2) {
+            double t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+        }
+
+        final double dx = x2 - x1;
+        final double gradient = dx == 0 ? 1.0 : (y2 - y1) / dx;
+
+        // First end point
+        final int xStart = (int) Math.round(x1);
+        double yIntersection = y1 + gradient * (xStart - x1);
+        final double startCoverage = 1.0 - fraction(x1 + 0.5);
+        plotCoverage(steep, xStart, yIntersection, startCoverage, colorCode);
+
+        // Second end point
+        final int xEnd = (int) Math.round(x2);
+        final double yEnd = y2 + gradient * (xEnd - x2);
+        final double endCoverage = fraction(x2 + 0.5);
+        if (xEnd != xStart) plotCoverage(steep, xEnd, yEnd, endCoverage, colorCode);
+
+        // Pixels between the end points, clipped to the image
+        final int limit = steep ? height : width;
+        final int first = Math.max(xStart + 1, 0);
+        final int last = Math.min(xEnd - 1, limit - 1);
+        yIntersection += gradient * (first - xStart);
+        for (int x = first; x <= last; x++) {
+            plotCoverage(steep, x, yIntersection, 1.0, colorCode);
+            yIntersection += gradient;
+        }
+
+        final int minX = (int) Math.floor(Math.min(x1, x2)) - 1;
+        final int minY = (int) Math.floor(Math.min(y1, y2)) - 1;
+        final int maxX = (int) Math.ceil(Math.max(x1, x2)) + 2;
+        final int maxY = (int) Math.ceil(Math.max(y1, y2)) + 2;
+        if (steep) includeChanged(minY, minX, maxY, maxX);
+        else includeChanged(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Draws lines between consecutive points.
+     * @param xs x coordinates of the points.
+     * @param ys y coordinates of the points.
+     * @param count number of points to use from the arrays.
+     */
+    public void drawPolyline(int[] xs, int[] ys, int count, int colorCode) {
+        checkPoints(xs, ys, count);
+
+        for (int i = 1; i < count; i++) {
+            drawLine(xs[i - 1], ys[i - 1], xs[i], ys[i], colorCode);
+        }
+    }
+
+    /**
+     * Fills a polygon using the even-odd rule.  Pixels whose centers are inside the polygon are filled.
+     * @param xs x coordinates of the vertices.
+     * @param ys y coordinates of the vertices.
+     * @param count number of vertices to use from the arrays.  The last vertex is connected to the first.
+     */
+    public void fillPolygon(int[] xs, int[] ys, int count, int colorCode) {
+        checkPoints(xs, ys, count);
+        if (count < 3) return;
+
+        int minY = ys[0];
+        int maxY = ys[0];
+        int minX = xs[0];
+        int maxX = xs[0];
+        for (int i = 1; i < count; i++) {
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+        }
+        minY = Math.max(minY, 0);
+        maxY = Math.min(maxY, height);
+        if (minY >= maxY || maxX < 0 || minX >= width) return;
+
+        if (crossings.length < count) crossings = new double[Math.max(count, crossings.length * 2)];
+
+        for (int y = minY; y < maxY; y++) {
+            final double scanY = y + 0.5;
+
+            // Find the edges crossing the center of the scanline
+            int crossingCount = 0;
+            int previous = count - 1;
+            for (int i = 0; i < count; i++) {
+                final int ya = ys[previous];
+                final int yb = ys[i];
+                if ((ya <= scanY) != (yb <= scanY)) {
+                    final double t = (scanY - ya) / (yb - ya);
+                    insertCrossing(crossingCount++, xs[previous] + t * (xs[i] - xs[previous]));
+                }
+                previous = i;
+            }
+
+            // Fill between pairs of crossings
+            for (int i = 0; i + 1 < crossingCount; i += 2) {
+                fillSpan(y, (int) Math.ceil(crossings[i] - 0.5), (int) Math.ceil(crossings[i + 1] - 0.5), colorCode);
+            }
+        }
+    }
+
+    /**
+     * Draws the one pixel wide outline of a circle using the midpoint algorithm.
+     */
+    public void drawCircle(int centerX, int centerY, int radius, int colorCode) {
+        if (radius < 0 || !overlaps(centerX - radius, centerY - radius, centerX + radius + 1, centerY + radius + 1)) return;
+
+        if (radius == 0) {
+            drawPixel(centerX, centerY, colorCode);
+            return;
+        }
+
+        int x = radius;
+        int y = 0;
+        int error = 1 - radius;
+        while (x >= y) {
+            plotClipped(centerX + x, centerY + y, colorCode);
+            plotClipped(centerX - x, centerY - y, colorCode);
+            if (y != 0) {
+                plotClipped(centerX + x, centerY - y, colorCode);
+                plotClipped(centerX - x, centerY + y, colorCode);
+            }
+            if (x != y) {
+                plotClipped(centerX + y, centerY + x, colorCode);
+                plotClipped(centerX - y, centerY - x, colorCode);
+                if (y != 0) {
+                    plotClipped(centerX - y, centerY + x, colorCode);
+                    plotClipped(centerX + y, centerY - x, colorCode);
+                }
+            }
+
+            y++;
+            if (error < 0) {
+                error += 2 * y + 1;
+            }
+            else {
+                x--;
+                error += 2 * (y - x) + 1;
+            }
+        }
+
+        includeChanged(centerX - radius, centerY - radius, centerX + radius + 1, centerY + radius + 1);
+    }
+
+    /**
+     * Fills a circle.  Pixels whose centers are inside the circle are filled.
+     * The center is given in pixel coordinates, e.g. (0.5, 0.5) is the center of the top left pixel.
+     */
+    public void fillCircle(double centerX, double centerY, double radius, int colorCode) {
+        if (radius <= 0) return;
+
+        final int y1 = Math.max((int) Math.ceil(centerY - radius - 0.5), 0);
+        final int y2 = Math.min((int) Math.ceil(centerY + radius - 0.5), height);
+        final double radiusSquared = radius * radius;
+        for (int y = y1; y < y2; y++) {
+            final double dy = y + 0.5 - centerY;
+            final double halfWidth = Math.sqrt(Math.max(radiusSquared - dy * dy, 0.0));
+            fillSpan(y, (int) Math.ceil(centerX - halfWidth - 0.5), (int) Math.ceil(centerX + halfWidth - 0.5), colorCode);
+        }
+    }
+
+    /**
+     * Fills the pixels from x1 (inclusive) to x2 (exclusive) on a row, clipped to the image.
+     */
+    private void fillSpan(int y, int x1, int x2, int colorCode) {
+        if (y < 0 || y >= height) return;
+        x1 = Math.max(x1, 0);
+        x2 = Math.min(x2, width);
+        if (x1 >= x2) return;
+
+        final int rowStart = y * width;
+        final int alpha = colorCode >>> RawImageOps.ALPHA_SHIFT;
+        if (alpha == 0xFF) {
+            Arrays.fill(data, rowStart + x1, rowStart + x2, colorCode);
+        }
+        else if (alpha != 0) {
+            final int amount = alpha + (alpha >> 7);
+            for (int i = rowStart + x1; i < rowStart + x2; i++) {
+                data[i] = blend(data[i], colorCode, amount);
+            }
+        }
+
+        includeChanged(x1, y, x2, y + 1);
+    }
+
+    /**
+     * Narrows the parameter range in limits to the part of a line where p * t <= q, for one edge of the clip rectangle.
+     * @return false if no part of the line is inside the edge.
+     */
+    private static boolean clipParameter(double p, double q, double[] limits) {
+        if (p == 0) return q >= 0;
+
+        final double t = q / p;
+        if (p < 0) {
+            if (t > limits[1]) return false;
+            if (t > limits[0]) limits[0] = t;
+        }
+        else {
+            if (t < limits[0]) return false;
+            if (t < limits[1]) limits[1] = t;
+        }
+        return true;
+    }
+
+    private static int clampToImage(long coordinate, int size) {
+        return (int) Math.max(0, Math.min(coordinate, size - 1));
+    }
+
+    private void plotClipped(int x, int y, int colorCode) {
+        if (x >= 0 && x < width && y >= 0 && y < height) plot(x + y * width, colorCode);
+    }
+
+    private void plot(int index, int colorCode) {
+        final int alpha = colorCode >>> RawImageOps.ALPHA_SHIFT;
+        if (alpha == 0xFF) data[index] = colorCode;
+        else if (alpha != 0) data[index] = blend(data[index], colorCode, alpha + (alpha >> 7));
+    }
+
+    /**
+     * Plots the two pixels on either side of a point on an anti-aliased line, weighted by their distance to it.
+     */
+    private void plotCoverage(boolean steep, int major, double minor, double coverage, int colorCode) {
+        final int minorPixel = (int) Math.floor(minor);
+        final double lowerWeight = 1.0 - (minor - minorPixel);
+        plotWeighted(steep, major, minorPixel, lowerWeight * coverage, colorCode);
+        plotWeighted(steep, major, minorPixel + 1, (1.0 - lowerWeight) * coverage, colorCode);
+    }
+
+    private void plotWeighted(boolean steep, int major, int minor, double weight, int colorCode) {
+        final int x = steep ? minor : major;
+        final int y = steep ? major : minor;
+        if (x < 0 || x >= width || y < 0 || y >= height) return;
+
+        // Alpha scaled by the weight, in the range 0..256
+        final int amount = (int) ((colorCode >>> RawImageOps.ALPHA_SHIFT) * weight * (256.0 / 255.0) + 0.5);
+        if (amount > 0) {
+            final int index = x + y * width;
+            data[index] = blend(data[index], colorCode, amount);
+        }
+    }
+
+    /**
+     * @return the color blended with the given amount, in the range 0..256, of the source color.
+     */
+    private static int blend(int destination, int source, int amount) {
+        final int r = mix(destination >>> RawImageOps.RED_SHIFT & 0xFF,   source >>> RawImageOps.RED_SHIFT & 0xFF,   amount);
+        final int g = mix(destination >>> RawImageOps.GREEN_SHIFT & 0xFF, source >>> RawImageOps.GREEN_SHIFT & 0xFF, amount);
+        final int b = mix(destination & 0xFF,                             source & 0xFF,                             amount);
+        final int da = destination >>> RawImageOps.ALPHA_SHIFT;
+        final int a = da + (((255 - da) * amount) >> 8);
+        return (a << RawImageOps.ALPHA_SHIFT) | (r << RawImageOps.RED_SHIFT) | (g << RawImageOps.GREEN_SHIFT) | b;
+    }
+
+    private static int mix(int destination, int source, int amount) {
+        return destination + (((source - destination) * amount) >> 8);
+    }
+
+    private static double fraction(double value) {
+        return value - Math.floor(value);
+    }
+
+    /**
+     * Inserts a crossing into the sorted part of the crossing buffer.  Polygons usually have few crossings per
+     * scanline, so insertion sort is fast enough.
+     */
+    private void insertCrossing(int index, double x) {
+        while (index > 0 && crossings[index - 1] > x) {
+            crossings[index] = crossings[index - 1];
+            index--;
+        }
+        crossings[index] = x;
+    }
+
+    private boolean overlaps(int x1, int y1, int x2, int y2) {
+        return x2 > 0 && y2 > 0 && x1 < width && y1 < height;
+    }
+
+    private void includeChanged(int x1, int y1, int x2, int y2) {
+        x1 = Math.max(x1, 0);
+        y1 = Math.max(y1, 0);
+        x2 = Math.min(x2, width);
+        y2 = Math.min(y2, height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        changedX1 = Math.min(changedX1, x1);
+        changedY1 = Math.min(changedY1, y1);
+        changedX2 = Math.max(changedX2, x2);
+        changedY2 = Math.max(changedY2, y2);
+    }
+
+    private void clearChanges() {
+        changedX1 = Integer.MAX_VALUE;
+        changedY1 = Integer.MAX_VALUE;
+        changedX2 = Integer.MIN_VALUE;
+        changedY2 = Integer.MIN_VALUE;
+    }
+
+    private static void checkPoints(int[] xs, int[] ys, int count) {
+        notNull(xs, "xs");
+        notNull(ys, "ys");
+        if (count < 0 || count > xs.length || count > ys.length) {
+            throw new IllegalArgumentException("The point count " + count + " should be between 0 and the length of the coordinate arrays.");
+        }
+    }
+}
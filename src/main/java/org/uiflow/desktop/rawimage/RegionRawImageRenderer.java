@@ -0,0 +1,22 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * A RawImageRenderer that can also re-render just a part of the image, e.g. when only the data behind that part changed.
+ */
+public interface RegionRawImageRenderer extends RawImageRenderer {
+
+    /**
+     * Renders the specified region of the target, leaving the rest of it unchanged.
+     * The region is clipped to the target.
+     *
+     * @param target the target to render to.  The rendered region is marked dirty and the target is flushed.
+     *               If the rendering thread is interrupted, the target is not flushed, and the partially rendered
+     *               region is left marked dirty.
+     * @param x left edge of the region to render.
+     * @param y top edge of the region to render.
+     * @param width width of the region to render.
+     * @param height height of the region to render.
+     */
+    void renderRegion(RawImage target, int x, int y, int width, int height);
+
+}
@@ -0,0 +1,143 @@
+package org.uiflow.desktop.rawimage;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.gradient.ColorFunction;
+import org.uiflow.desktop.gradient.ColorMapper;
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Image with a float value for each pixel, for example a height map or a heat map, that is shown by converting the
+ * values to colors with a ColorFunction.
+ *
+ * Renderers calculate the values once, and the image can then be recolored with a different gradient, value range
+ * or contrast with a single parallel pass over the values, without calculating them again.
+ * NaN values are shown with a default color.  The color function is called from several threads at once when coloring
+ * large images, so it should not be modified while coloring.
+ */
+public final class ScalarFieldImage {
+
+    private static final int MIN_PIXELS_PER_BAND = 64 * 1024;
+
+    private final int width;
+    private final int height;
+    private final float[] values;
+
+    /**
+     * Creates a new image with all values zero.
+     */
+    public ScalarFieldImage(int width, int height) {
+        Check.positive(width, "width");
+        Check.positive(height, "height");
+
+        this.width = width;
+        this.height = height;
+        values = new float[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the values, row by row.  May be edited directly.
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the value at the specified pixel.  Throws exception if out of range.
+     */
+    public float getValue(int x, int y) {
+        return values[index(x, y)];
+    }
+
+    /**
+     * Sets the value at the specified pixel.  Throws exception if coordinates are out of range.
+     */
+    public void setValue(int x, int y, float value) {
+        values[index(x, y)] = value;
+    }
+
+    /**
+     * Sets all values to the specified value.
+     */
+    public void clear(float value) {
+        Arrays.fill(values, value);
+    }
+
+    /**
+     * @return the smallest and largest value in the image, ignoring NaN values, as the first and second element of the
+     *         returned array.  Useful for stretching the colors over the actual range of the values.
+     *         Both are NaN if all values are NaN.
+     */
+    public float[] getValueRange() {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float value : values) {
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+
+        if (min > max) return new float[]{Float.NaN, Float.NaN};
+        else return new float[]{min, max};
+    }
+
+    /**
+     * Writes the colors for the values into the target, using the color function and value mapping of the color mapper.
+     * NaN values and all values if the mapper has no color function get the default color of the mapper.
+     *
+     * @param target image to write the colors to, should be the same size as this image.  Marked dirty.
+     * @param colorMapper mapper to convert the values with.
+     */
+    public void colorize(final RawImage target, final ColorMapper<?> colorMapper) {
+        notNull(target, "target");
+        notNull(colorMapper, "colorMapper");
+        Check.equal(target.getWidth(), "target width", width, "width");
+        Check.equal(target.getHeight(), "target height", height, "height");
+
+        final int[] targetData = target.getUntrackedBuffer();
+        ParallelRange.forRange(0, values.length, MIN_PIXELS_PER_BAND, new RangeTask() {
+            @Override public void process(int start, int end) {
+                colorMapper.colorCodesFor(values, start, 1, targetData, start, 1, end - start);
+            }
+        });
+
+        target.markAllDirty();
+    }
+
+    /**
+     * Writes the colors for the values into the target, stretching the color function over the specified value range,
+     * so that rangeStart maps to 0 and rangeEnd to 1 in the color function.  NaN values are black.
+     *
+     * @param target image to write the colors to, should be the same size as this image.  Marked dirty.
+     * @param colorFunction color function to get the colors from, e.g. a ColorGradient.
+     * @param rangeStart value that is mapped to the start of the color function.
+     * @param rangeEnd value that is mapped to the end of the color function.  Should not be equal to rangeStart.
+     */
+    public void colorize(RawImage target, ColorFunction colorFunction, double rangeStart, double rangeEnd) {
+        notNull(colorFunction, "colorFunction");
+        Check.normalNumber(rangeStart, "rangeStart");
+        Check.normalNumber(rangeEnd, "rangeEnd");
+        if (rangeStart == rangeEnd) throw new IllegalArgumentException("The range start and end should not be the same, but both were " + rangeStart);
+
+        colorize(target, new ColorMapper<Float>(colorFunction, -rangeStart, 1.0 / (rangeEnd - rangeStart), 0.0, Color.BLACK));
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height) throw new IllegalArgumentException("The coordinate ("+x+", "+y+") is out of bounds, the image width is "+width+", and height is "+height+".");
+
+        return x + y * width;
+    }
+}
@@ -0,0 +1,312 @@
+package org.uiflow.desktop.rawimage;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+/**
+ * Large image split into square tiles, where memory is only allocated for tiles that contain more than one color.
+ * Uses the same color format as RawImage.
+ *
+ * Tiles that have a single color are stored as just that color, and are only allocated when something different is
+ * written to them.  Snapshots share all tiles with the original image, and a tile is copied only when either
+ * image writes to it, which makes snapshots cheap, e.g. for undo.
+ *
+ * Not thread safe for writing, but copyRegion can be called from several threads as long as the image is not modified.
+ * Use a RawImageViewport to show the visible part of the image.
+ */
+public final class TiledRawImage implements RawImageSource {
+
+    private static final int DEFAULT_TILE_SIZE_SHIFT = 6;
+
+    private final int width;
+    private final int height;
+    private final int tileSizeShift;
+    private final int tileSize;
+    private final int tileMask;
+    private final int tilesX;
+    private final int tilesY;
+
+    private final Tile[] tiles;
+
+    /**
+     * Creates a new black image with 64 x 64 pixel tiles.
+     */
+    public TiledRawImage(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE_SHIFT);
+    }
+
+    /**
+     * Creates a new black image.
+     * @param tileSizeShift the tile width and height is two to the power of this.  E.g. 6 gives 64 x 64 pixel tiles.
+     */
+    public TiledRawImage(int width, int height, int tileSizeShift) {
+        Check.positive(width, "width");
+        Check.positive(height, "height");
+        if (tileSizeShift < 1 || tileSizeShift > 12) throw new IllegalArgumentException("The tileSizeShift should be in the range 1 to 12, but it was " + tileSizeShift);
+
+        this.width = width;
+        this.height = height;
+        this.tileSizeShift = tileSizeShift;
+        tileSize = 1 << tileSizeShift;
+        tileMask = tileSize - 1;
+        tilesX = (width + tileMask) >> tileSizeShift;
+        tilesY = (height + tileMask) >> tileSizeShift;
+
+        tiles = new Tile[tilesX * tilesY];
+        clearToColor(0xFF000000);
+    }
+
+    /**
+     * Creates a snapshot sharing the tiles of the source.
+     */
+    private TiledRawImage(TiledRawImage source) {
+        width = source.width;
+        height = source.height;
+        tileSizeShift = source.tileSizeShift;
+        tileSize = source.tileSize;
+        tileMask = source.tileMask;
+        tilesX = source.tilesX;
+        tilesY = source.tilesY;
+
+        tiles = source.tiles.clone();
+        for (Tile tile : tiles) {
+            tile.shared = true;
+        }
+    }
+
+    @Override public int getWidth() {
+        return width;
+    }
+
+    @Override public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return width and height of the tiles, in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return number of tiles that have their own color data allocated.  Tiles shared with snapshots are included.
+     */
+    public int getAllocatedTileCount() {
+        int count = 0;
+        for (Tile tile : tiles) {
+            if (tile.data != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return a copy of this image that initially shares all tiles with this image.
+     *         Tiles are copied when either image writes to them.
+     */
+    public TiledRawImage snapshot() {
+        return new TiledRawImage(this);
+    }
+
+    /**
+     * @return the color RGBA value at the specified pixel.  Throws exception if out of range.
+     */
+    public int getPixel(int x, int y) {
+        checkCoordinate(x, y);
+
+        final Tile tile = tiles[(y >> tileSizeShift) * tilesX + (x >> tileSizeShift)];
+        if (tile.data == null) return tile.color;
+        else return tile.data[((y & tileMask) << tileSizeShift) + (x & tileMask)];
+    }
+
+    /**
+     * Sets the color RGBA value at the specified pixel.  Throws exception if coordinates are out of range.
+     */
+    public void setPixel(int x, int y, int colorCode) {
+        checkCoordinate(x, y);
+
+        final int tileIndex = (y >> tileSizeShift) * tilesX + (x >> tileSizeShift);
+        final Tile tile = tiles[tileIndex];
+
+        // Writing the same color to a single colored tile changes nothing
+        if (tile.data == null && tile.color == colorCode) return;
+
+        getWritableTile(tileIndex).data[((y & tileMask) << tileSizeShift) + (x & tileMask)] = colorCode;
+    }
+
+    /**
+     * Clears the whole image to the specified color, releasing the color data of all tiles.
+     */
+    public void clearToColor(int colorCode) {
+        // Single colored tiles are never modified, so the same one can be used everywhere
+        final Tile uniformTile = new Tile(colorCode);
+        Arrays.fill(tiles, uniformTile);
+    }
+
+    /**
+     * Renders a filled rectangle on the image.  The parts of the rectangle outside the image are ignored.
+     * Tiles that are completely covered by the rectangle become single colored.
+     */
+    public void fillRect(int x, int y, int w, int h, int colorCode) {
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = (int) Math.min((long) x + w, width);
+        final int y2 = (int) Math.min((long) y + h, height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        final Tile uniformTile = new Tile(colorCode);
+
+        for (int tileY = y1 >> tileSizeShift; tileY <= (y2 - 1) >> tileSizeShift; tileY++) {
+            for (int tileX = x1 >> tileSizeShift; tileX <= (x2 - 1) >> tileSizeShift; tileX++) {
+                final int tileIndex = tileY * tilesX + tileX;
+
+                // Area of the tile covered by the rectangle, in tile coordinates
+                final int tx1 = Math.max(x1 - (tileX << tileSizeShift), 0);
+                final int ty1 = Math.max(y1 - (tileY << tileSizeShift), 0);
+                final int tx2 = Math.min(x2 - (tileX << tileSizeShift), tileSize);
+                final int ty2 = Math.min(y2 - (tileY << tileSizeShift), tileSize);
+
+                // Tiles at the right and bottom edges may extend outside the image
+                final int validWidth = Math.min(tileSize, width - (tileX << tileSizeShift));
+                final int validHeight = Math.min(tileSize, height - (tileY << tileSizeShift));
+
+                final Tile tile = tiles[tileIndex];
+                if (tx1 == 0 && ty1 == 0 && tx2 == validWidth && ty2 == validHeight) {
+                    // Whole tile covered
+                    tiles[tileIndex] = uniformTile;
+                }
+                else if (tile.data != null || tile.color != colorCode) {
+                    final int[] data = getWritableTile(tileIndex).data;
+                    for (int ty = ty1; ty < ty2; ty++) {
+                        final int rowStart = ty << tileSizeShift;
+                        Arrays.fill(data, rowStart + tx1, rowStart + tx2, colorCode);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies color data from a RawImage into this image.  Tiles are only allocated where the source differs from
+     * the current content of a single colored tile.
+     *
+     * @param source image to copy from.
+     * @param x left edge in this image to copy the source to.
+     * @param y top edge in this image to copy the source to.
+     */
+    public void copyFrom(RawImage source, int x, int y) {
+        Check.notNull(source, "source");
+
+        final int x1 = Math.max(x, 0);
+        final int y1 = Math.max(y, 0);
+        final int x2 = (int) Math.min((long) x + source.getWidth(), width);
+        final int y2 = (int) Math.min((long) y + source.getHeight(), height);
+
+        final int[] sourceData = source.getUntrackedBuffer();
+        final int sourceWidth = source.getWidth();
+        for (int yp = y1; yp < y2; yp++) {
+            final int sourceRowStart = (yp - y) * sourceWidth - x;
+            for (int xp = x1; xp < x2; xp++) {
+                setPixel(xp, yp, sourceData[sourceRowStart + xp]);
+            }
+        }
+    }
+
+    /**
+     * Turns allocated tiles that contain only one color into single colored tiles, releasing their color data.
+     */
+    public void compact() {
+        for (int i = 0; i < tiles.length; i++) {
+            final int[] data = tiles[i].data;
+            if (data != null) {
+                final int color = data[0];
+                boolean uniform = true;
+                for (int j = 1; j < data.length && uniform; j++) {
+                    uniform = data[j] == color;
+                }
+
+                if (uniform) tiles[i] = new Tile(color);
+            }
+        }
+    }
+
+    @Override public void copyRegion(int x, int y, int w, int h, int[] target, int targetOffset, int targetScanlineStride) {
+        if (x < 0 || y < 0 || w < 0 || h < 0 || (long) x + w > width || (long) y + h > height) {
+            throw new IllegalArgumentException("The region (" + x + ", " + y + ", " + w + ", " + h + ") is not inside the image, the image width is " + width + ", and height is " + height + ".");
+        }
+
+        for (int row = y; row < y + h; row++) {
+            final int tileRowStart = (row >> tileSizeShift) * tilesX;
+            final int rowInTile = (row & tileMask) << tileSizeShift;
+
+            // Copy the parts of the row that are in each tile
+            int targetIndex = targetOffset;
+            int xp = x;
+            while (xp < x + w) {
+                final Tile tile = tiles[tileRowStart + (xp >> tileSizeShift)];
+                final int length = Math.min(tileSize - (xp & tileMask), x + w - xp);
+
+                if (tile.data == null) {
+                    Arrays.fill(target, targetIndex, targetIndex + length, tile.color);
+                }
+                else {
+                    System.arraycopy(tile.data, rowInTile + (xp & tileMask), target, targetIndex, length);
+                }
+
+                targetIndex += length;
+                xp += length;
+            }
+
+            targetOffset += targetScanlineStride;
+        }
+    }
+
+    /**
+     * @return a tile with allocated color data that is not shared with any other image, copying the current one if needed.
+     */
+    private Tile getWritableTile(int tileIndex) {
+        Tile tile = tiles[tileIndex];
+        if (tile.data == null) {
+            final int[] data = new int[tileSize * tileSize];
+            Arrays.fill(data, tile.color);
+            tile = new Tile(data);
+            tiles[tileIndex] = tile;
+        }
+        else if (tile.shared) {
+            tile = new Tile(tile.data.clone());
+            tiles[tileIndex] = tile;
+        }
+
+        return tile;
+    }
+
+    private void checkCoordinate(int x, int y) {
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height) throw new IllegalArgumentException("The coordinate ("+x+", "+y+") is out of bounds, the image width is "+width+", and height is "+height+".");
+    }
+
+    /**
+     * Either a single color, or allocated color data for each pixel of the tile.
+     * Single colored tiles are never modified, so they can be used for several tile positions.
+     */
+    private static final class Tile {
+        private final int[] data;
+        private final int color;
+
+        /**
+         * True if the tile may be used by more than one image, in which case it must be copied before it is written to.
+         */
+        private boolean shared;
+
+        private Tile(int color) {
+            this.data = null;
+            this.color = color;
+        }
+
+        private Tile(int[] data) {
+            this.data = data;
+            this.color = 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.uiflow.desktop.rawimage;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Converts the float channel values of a FloatRawImage to displayable colors in a RawImage.
+ *
+ * Each channel value is first multiplied by two to the power of the exposure, then compressed into the 0..1 range with
+ * the tone mapping operator, and finally gamma corrected using a lookup table.  Dark values, where neighbouring table
+ * entries would be more than one output level apart, are gamma corrected exactly instead, so that no dark output levels
+ * are skipped.  The conversion is done in parallel.
+ *
+ * The mapper remembers what it last wrote, and skips the conversion if neither the source image nor the tone mapping
+ * parameters have changed since, so changing the exposure only costs one pass over the image and no re-rendering.
+ */
+public final class ToneMapper {
+
+    private static final int GAMMA_TABLE_SIZE = 4096;
+    private static final int MIN_PIXELS_PER_BAND = 64 * 1024;
+    private static final double DEFAULT_GAMMA = 2.2;
+
+    private ToneMappingOperator operator;
+    private double exposure;
+    private double gamma;
+
+    private final int[] gammaTable = new int[GAMMA_TABLE_SIZE + 1];
+
+    // Table positions below this are gamma corrected exactly, as the table is too coarse for them
+    private int exactGammaLimit;
+
+    // What was last mapped, used to skip mapping when nothing changed
+    private FloatRawImage lastSource;
+    private RawImage lastTarget;
+    private int lastSourceChangeCount;
+    private boolean parametersChanged = true;
+
+    /**
+     * Creates a tone mapper using the Reinhard operator, zero exposure, and a gamma of 2.2.
+     */
+    public ToneMapper() {
+        this(ToneMappingOperator.REINHARD, 0, DEFAULT_GAMMA);
+    }
+
+    /**
+     * @param operator curve used to compress the exposed values into the 0..1 range.
+     * @param exposure exposure in stops, values are multiplied with two to the power of this before the operator is applied.
+     * @param gamma gamma used to encode the mapped values, 1 for linear output.
+     */
+    public ToneMapper(ToneMappingOperator operator, double exposure, double gamma) {
+        setOperator(operator);
+        setExposure(exposure);
+        setGamma(gamma);
+    }
+
+    public ToneMappingOperator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @param operator curve used to compress the exposed values into the 0..1 range.
+     */
+    public void setOperator(ToneMappingOperator operator) {
+        notNull(operator, "operator");
+        if (this.operator != operator) {
+            this.operator = operator;
+            parametersChanged = true;
+        }
+    }
+
+    public double getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @param exposure exposure in stops, values are multiplied with two to the power of this before the operator is applied.
+     */
+    public void setExposure(double exposure) {
+        Check.normalNumber(exposure, "exposure");
+        if (this.exposure != exposure) {
+            this.exposure = exposure;
+            parametersChanged = true;
+        }
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    /**
+     * @param gamma gamma used to encode the mapped values, 1 for linear output.
+     */
+    public void setGamma(double gamma) {
+        Check.positive(gamma, "gamma");
+        if (this.gamma != gamma) {
+            this.gamma = gamma;
+            parametersChanged = true;
+
+            for (int i = 0; i <= GAMMA_TABLE_SIZE; i++) {
+                gammaTable[i] = (int) Math.round(255 * Math.pow((double) i / GAMMA_TABLE_SIZE, 1.0 / gamma));
+            }
+
+            // Above the last step of more than one level, consecutive entries cover every output level
+            exactGammaLimit = 0;
+            for (int i = GAMMA_TABLE_SIZE - 1; i >= 0; i--) {
+                if (gammaTable[i + 1] - gammaTable[i] > 1) {
+                    exactGammaLimit = i + 1;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the tone mapped source into the target, unless the same source was already mapped into the same target
+     * with the current parameters and the source has not changed since.  Marks the whole target dirty when mapped.
+     *
+     * @param source image to map.
+     * @param target image to write the opaque result colors to.  Should have the same size as the source.
+     * @return true if the target was updated, false if it was already up to date.
+     */
+    public boolean apply(FloatRawImage source, RawImage target) {
+        notNull(source, "source");
+        notNull(target, "target");
+        Check.equal(target.getWidth(), "target width", source.getWidth(), "source width");
+        Check.equal(target.getHeight(), "target height", source.getHeight(), "source height");
+
+        if (!parametersChanged && source == lastSource && target == lastTarget &&
+            source.getChangeCount() == lastSourceChangeCount) {
+            return false;
+        }
+
+        final float[] red = source.getRedChannel();
+        final float[] green = source.getGreenChannel();
+        final float[] blue = source.getBlueChannel();
+        final int[] targetData = target.getUntrackedBuffer();
+        final ToneMappingOperator operator = this.operator;
+        final float scale = (float) Math.pow(2, exposure);
+        final int[] gammaTable = this.gammaTable;
+        final int exactGammaLimit = this.exactGammaLimit;
+        final double inverseGamma = 1.0 / gamma;
+
+        ParallelRange.forRange(0, red.length, MIN_PIXELS_PER_BAND, new RangeTask() {
+            @Override public void process(int start, int end) {
+                for (int i = start; i < end; i++) {
+                    targetData[i] = 0xFF000000 |
+                                    (mapValue(red[i], scale, operator, gammaTable, exactGammaLimit, inverseGamma) << RawImageOps.RED_SHIFT) |
+                                    (mapValue(green[i], scale, operator, gammaTable, exactGammaLimit, inverseGamma) << RawImageOps.GREEN_SHIFT) |
+                                    mapValue(blue[i], scale, operator, gammaTable, exactGammaLimit, inverseGamma);
+                }
+            }
+        });
+
+        target.markAllDirty();
+
+        lastSource = source;
+        lastTarget = target;
+        lastSourceChangeCount = source.getChangeCount();
+        parametersChanged = false;
+        return true;
+    }
+
+    private static int mapValue(float value, float scale, ToneMappingOperator operator,
+                                int[] gammaTable, int exactGammaLimit, double inverseGamma) {
+        // Also maps NaN to zero
+        if (!(value > 0f)) return 0;
+
+        final float mapped = operator.map(value * scale);
+        if (mapped >= 1f) return gammaTable[GAMMA_TABLE_SIZE];
+
+        final float position = mapped * GAMMA_TABLE_SIZE + 0.5f;
+        if (position < exactGammaLimit) return (int) Math.round(255 * Math.pow(mapped, inverseGamma));
+        else return gammaTable[(int) position];
+    }
+}
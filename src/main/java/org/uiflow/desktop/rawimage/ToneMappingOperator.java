@@ -0,0 +1,32 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * Curve used by a ToneMapper to compress exposed channel values into the displayable 0..1 range.
+ */
+public enum ToneMappingOperator {
+
+    /**
+     * Values are used as is, and values above one are clamped to one.
+     */
+    LINEAR {
+        @Override float map(float value) {
+            return value;
+        }
+    },
+
+    /**
+     * The Reinhard operator value / (1 + value), which brings values of any size below one, keeping detail in
+     * bright areas while leaving dark areas mostly unchanged.
+     */
+    REINHARD {
+        @Override float map(float value) {
+            return value / (1f + value);
+        }
+    };
+
+    /**
+     * @param value exposed channel value, zero or larger.
+     * @return the mapped value, clamped to 0..1 by the caller.
+     */
+    abstract float map(float value);
+}
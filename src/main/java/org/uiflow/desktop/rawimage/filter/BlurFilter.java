@@ -0,0 +1,177 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+import org.uiflow.desktop.rawimage.RawImage;
+
+import static org.uiflow.desktop.rawimage.filter.FilterUtils.*;
+
+/**
+ * Blurs all channels of an image with one or more box blur passes.
+ *
+ * Each pass is done as a horizontal and a vertical pass, that keep running sums over the box, so the cost does not
+ * depend on the radius.  The vertical pass processes blocks of columns a row at a time to stay cache friendly.
+ * Several box blur passes approximate a gaussian blur.  Pixels outside the image are treated as copies of the edge pixels.
+ */
+public final class BlurFilter implements RawImageFilter {
+
+    private static final int GAUSSIAN_PASSES = 3;
+
+    private final int radius;
+    private final int passes;
+
+    /**
+     * @return a filter that averages each pixel with its neighbours within the radius.
+     */
+    public static BlurFilter box(int radius) {
+        return new BlurFilter(radius, 1);
+    }
+
+    /**
+     * @return a filter that approximates a gaussian blur with the specified standard deviation, using three box blurs.
+     */
+    public static BlurFilter gaussian(double sigma) {
+        Check.positive(sigma, "sigma");
+
+        // Width of box blurs whose repeated application has the same variance as the gaussian
+        final double boxWidth = Math.sqrt(12 * sigma * sigma / GAUSSIAN_PASSES + 1);
+        return new BlurFilter(Math.max(1, (int) Math.round((boxWidth - 1) / 2)), GAUSSIAN_PASSES);
+    }
+
+    /**
+     * @param radius number of pixels on each side of a pixel to average it with.
+     * @param passes number of times to apply the box blur.
+     */
+    public BlurFilter(int radius, int passes) {
+        Check.positive(radius, "radius");
+        Check.positive(passes, "passes");
+
+        this.radius = radius;
+        this.passes = passes;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    @Override public void apply(RawImage source, RawImage target, FilterScratch scratch) {
+        checkImages(source, target, scratch);
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int[] intermediate = scratch.getBuffer(0, width * height);
+        final int[] columnSums = scratch.getBuffer(1, 4 * width);
+
+        // The vertical pass reads only the intermediate buffer, so the target can be the source
+        int[] input = source.getUntrackedBuffer();
+        final int[] output = target.getUntrackedBuffer();
+        for (int pass = 0; pass < passes; pass++) {
+            horizontalPass(input, intermediate, width, height);
+            verticalPass(intermediate, output, columnSums, width, height);
+            input = output;
+        }
+
+        target.markAllDirty();
+    }
+
+    private void horizontalPass(final int[] input, final int[] output, final int width, final int height) {
+        final int diameter = 2 * radius + 1;
+        final long multiplier = (1L << 32) / diameter;
+
+        ParallelRange.forRange(0, height, minRowsPerBand(width), new RangeTask() {
+            @Override public void process(int start, int end) {
+                final int lastX = width - 1;
+                for (int y = start; y < end; y++) {
+                    final int row = y * width;
+
+                    int a = 0, r = 0, g = 0, b = 0;
+                    for (int k = -radius; k <= radius; k++) {
+                        final int color = input[row + clamp(k, lastX)];
+                        a += color >>> 24;
+                        r += color >>> 16 & 0xFF;
+                        g += color >>> 8 & 0xFF;
+                        b += color & 0xFF;
+                    }
+
+                    for (int x = 0; x < width; x++) {
+                        output[row + x] = pack(a, r, g, b, multiplier);
+
+                        final int removed = input[row + clamp(x - radius, lastX)];
+                        final int added = input[row + clamp(x + radius + 1, lastX)];
+                        a += (added >>> 24)        - (removed >>> 24);
+                        r += (added >>> 16 & 0xFF) - (removed >>> 16 & 0xFF);
+                        g += (added >>> 8 & 0xFF)  - (removed >>> 8 & 0xFF);
+                        b += (added & 0xFF)        - (removed & 0xFF);
+                    }
+                }
+            }
+        });
+    }
+
+    private void verticalPass(final int[] input, final int[] output, final int[] sums, final int width, final int height) {
+        final int diameter = 2 * radius + 1;
+        final long multiplier = (1L << 32) / diameter;
+
+        ParallelRange.forRange(0, columnBlockCount(width), minColumnBlocksPerBand(height), new RangeTask() {
+            @Override public void process(int start, int end) {
+                final int lastY = height - 1;
+                for (int block = start; block < end; block++) {
+                    final int x1 = block * COLUMN_BLOCK_WIDTH;
+                    final int x2 = Math.min(x1 + COLUMN_BLOCK_WIDTH, width);
+
+                    // Each block uses its own part of the sums, four values per column
+                    for (int x = x1; x < x2; x++) {
+                        int a = 0, r = 0, g = 0, b = 0;
+                        for (int k = -radius; k <= radius; k++) {
+                            final int color = input[clamp(k, lastY) * width + x];
+                            a += color >>> 24;
+                            r += color >>> 16 & 0xFF;
+                            g += color >>> 8 & 0xFF;
+                            b += color & 0xFF;
+                        }
+                        sums[4 * x] = a;
+                        sums[4 * x + 1] = r;
+                        sums[4 * x + 2] = g;
+                        sums[4 * x + 3] = b;
+                    }
+
+                    for (int y = 0; y < height; y++) {
+                        final int row = y * width;
+                        final int removedRow = clamp(y - radius, lastY) * width;
+                        final int addedRow = clamp(y + radius + 1, lastY) * width;
+                        for (int x = x1; x < x2; x++) {
+                            final int s = 4 * x;
+                            output[row + x] = pack(sums[s], sums[s + 1], sums[s + 2], sums[s + 3], multiplier);
+
+                            final int removed = input[removedRow + x];
+                            final int added = input[addedRow + x];
+                            sums[s]     += (added >>> 24)        - (removed >>> 24);
+                            sums[s + 1] += (added >>> 16 & 0xFF) - (removed >>> 16 & 0xFF);
+                            sums[s + 2] += (added >>> 8 & 0xFF)  - (removed >>> 8 & 0xFF);
+                            sums[s + 3] += (added & 0xFF)        - (removed & 0xFF);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a color with the channel sums divided by the box diameter, using a multiplier of 2^32 / diameter.
+     */
+    private static int pack(int a, int r, int g, int b, long multiplier) {
+        return (divide(a, multiplier) << 24) |
+               (divide(r, multiplier) << 16) |
+               (divide(g, multiplier) << 8) |
+               divide(b, multiplier);
+    }
+
+    private static int divide(int sum, long multiplier) {
+        return (int) ((sum * multiplier + (1L << 31)) >>> 32);
+    }
+}
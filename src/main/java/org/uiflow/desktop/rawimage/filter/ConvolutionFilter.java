@@ -0,0 +1,125 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+import org.uiflow.desktop.rawimage.RawImage;
+
+import static org.uiflow.desktop.rawimage.filter.FilterUtils.*;
+
+/**
+ * Convolves the red, green and blue channels of an image with a small square kernel, e.g. 3x3 or 5x5.
+ * The alpha channel is kept as is.  Results are clamped to the valid range, and pixels outside the image are
+ * treated as copies of the edge pixels.  Uses fixed point weights, with 12 fractional bits.
+ * For blurs, use BlurFilter instead, which is much faster for larger radiuses.
+ */
+public final class ConvolutionFilter implements RawImageFilter {
+
+    private static final int FRACTION_BITS = 12;
+    private static final int MAX_SIZE = 15;
+
+    private final int size;
+    private final int[] weights;
+
+    /**
+     * @param amount strength of the sharpening, 1 is a normal strength.
+     * @return a 3x3 filter that sharpens the image.
+     */
+    public static ConvolutionFilter sharpen(double amount) {
+        final double a = amount;
+        return new ConvolutionFilter(3,
+                                     0, -a, 0,
+                                     -a, 1 + 4 * a, -a,
+                                     0, -a, 0);
+    }
+
+    /**
+     * @return a 3x3 Laplacian filter that highlights edges, and turns flat areas black.
+     */
+    public static ConvolutionFilter edgeDetect() {
+        return new ConvolutionFilter(3,
+                                     -1, -1, -1,
+                                     -1,  8, -1,
+                                     -1, -1, -1);
+    }
+
+    /**
+     * @return a 3x3 filter that gives the image an embossed look.
+     */
+    public static ConvolutionFilter emboss() {
+        return new ConvolutionFilter(3,
+                                     -2, -1, 0,
+                                     -1,  1, 1,
+                                      0,  1, 2);
+    }
+
+    /**
+     * @param size width and height of the kernel, an odd number, at most 15.
+     * @param kernel weights of the kernel, row by row, size * size values.
+     */
+    public ConvolutionFilter(int size, double ... kernel) {
+        Check.notNull(kernel, "kernel");
+        if (size < 1 || size > MAX_SIZE || size % 2 == 0) throw new IllegalArgumentException("The size should be an odd number from 1 to " + MAX_SIZE + ", but it was " + size);
+        Check.equal(kernel.length, "kernel length", size * size, "size * size");
+
+        this.size = size;
+        weights = new int[kernel.length];
+        for (int i = 0; i < kernel.length; i++) {
+            Check.normalNumber(kernel[i], "kernel value");
+            weights[i] = (int) Math.round(kernel[i] * (1 << FRACTION_BITS));
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override public void apply(RawImage source, RawImage target, FilterScratch scratch) {
+        checkImages(source, target, scratch);
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+
+        // Convolve from a copy, so that the target can be the source
+        final int[] input = scratch.getBuffer(0, width * height);
+        System.arraycopy(source.getUntrackedBuffer(), 0, input, 0, width * height);
+        final int[] output = target.getUntrackedBuffer();
+
+        final int half = size / 2;
+        ParallelRange.forRange(0, height, minRowsPerBand(width), new RangeTask() {
+            @Override public void process(int start, int end) {
+                final int lastX = width - 1;
+                final int lastY = height - 1;
+                final int rounding = 1 << (FRACTION_BITS - 1);
+                for (int y = start; y < end; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int r = 0, g = 0, b = 0;
+                        int w = 0;
+                        for (int ky = -half; ky <= half; ky++) {
+                            final int row = clamp(y + ky, lastY) * width;
+                            for (int kx = -half; kx <= half; kx++) {
+                                final int color = input[row + clamp(x + kx, lastX)];
+                                final int weight = weights[w++];
+                                r += weight * (color >>> 16 & 0xFF);
+                                g += weight * (color >>> 8 & 0xFF);
+                                b += weight * (color & 0xFF);
+                            }
+                        }
+
+                        final int index = y * width + x;
+                        output[index] = (input[index] & 0xFF000000) |
+                                        (clampComponent((r + rounding) >> FRACTION_BITS) << 16) |
+                                        (clampComponent((g + rounding) >> FRACTION_BITS) << 8) |
+                                        clampComponent((b + rounding) >> FRACTION_BITS);
+                    }
+                }
+            }
+        });
+
+        target.markAllDirty();
+    }
+
+    private static int clampComponent(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,34 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffers for intermediate filter results.  The buffers are kept between filters and grown when needed,
+ * so filtering images of the same size again does not allocate memory.  Not thread safe.
+ */
+public final class FilterScratch {
+
+    private int[][] buffers = new int[2][];
+
+    /**
+     * @param slot index of the buffer, filters that need several buffers at the same time use different slots.
+     * @param minLength minimum length of the buffer.
+     * @return a buffer with at least the requested length.  The contents are left over from earlier use.
+     */
+    public int[] getBuffer(int slot, int minLength) {
+        if (slot < 0) throw new IllegalArgumentException("The slot should not be negative, but it was " + slot);
+
+        if (slot >= buffers.length) buffers = Arrays.copyOf(buffers, slot + 1);
+        if (buffers[slot] == null || buffers[slot].length < minLength) {
+            buffers[slot] = new int[minLength];
+        }
+        return buffers[slot];
+    }
+
+    /**
+     * Releases the buffers, so that their memory can be reclaimed.
+     */
+    public void release() {
+        Arrays.fill(buffers, null);
+    }
+}
@@ -0,0 +1,53 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.rawimage.RawImage;
+
+/**
+ * Helpers shared by the filters.
+ */
+final class FilterUtils {
+
+    /**
+     * Number of columns processed together in vertical passes, so that each row of the block stays in the cache.
+     */
+    static final int COLUMN_BLOCK_WIDTH = 64;
+
+    /**
+     * Minimum number of pixels to process in one band when processing in parallel.
+     */
+    static final int MIN_PIXELS_PER_BAND = 32 * 1024;
+
+    static void checkImages(RawImage source, RawImage target, FilterScratch scratch) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+        Check.notNull(scratch, "scratch");
+        Check.equal(target.getWidth(), "target width", source.getWidth(), "source width");
+        Check.equal(target.getHeight(), "target height", source.getHeight(), "source height");
+    }
+
+    /**
+     * @return the minimum number of rows to process in one band for images of the specified width.
+     */
+    static int minRowsPerBand(int width) {
+        return Math.max(1, MIN_PIXELS_PER_BAND / width);
+    }
+
+    /**
+     * @return the minimum number of column blocks to process in one band for images of the specified height.
+     */
+    static int minColumnBlocksPerBand(int height) {
+        return Math.max(1, MIN_PIXELS_PER_BAND / (COLUMN_BLOCK_WIDTH * height));
+    }
+
+    static int columnBlockCount(int width) {
+        return (width + COLUMN_BLOCK_WIDTH - 1) / COLUMN_BLOCK_WIDTH;
+    }
+
+    static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    private FilterUtils() {
+    }
+}
@@ -0,0 +1,124 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.parallel.ParallelRange;
+import org.uiflow.desktop.parallel.RangeTask;
+import org.uiflow.desktop.rawimage.RawImage;
+
+import static org.uiflow.desktop.rawimage.filter.FilterUtils.*;
+
+/**
+ * Dilates or erodes all channels of an image, taking the largest or smallest value of each channel within a square
+ * around each pixel.  Done as a horizontal and a vertical pass.  Chain a dilation and an erosion in a
+ * RawImageFilterPipeline for closing, or the other way around for opening.
+ */
+public final class MorphologyFilter implements RawImageFilter {
+
+    private final int radius;
+    private final boolean dilate;
+
+    /**
+     * @return a filter that takes the largest value of each channel within the radius.
+     */
+    public static MorphologyFilter dilate(int radius) {
+        return new MorphologyFilter(radius, true);
+    }
+
+    /**
+     * @return a filter that takes the smallest value of each channel within the radius.
+     */
+    public static MorphologyFilter erode(int radius) {
+        return new MorphologyFilter(radius, false);
+    }
+
+    private MorphologyFilter(int radius, boolean dilate) {
+        Check.positive(radius, "radius");
+
+        this.radius = radius;
+        this.dilate = dilate;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return true if this filter dilates, false if it erodes.
+     */
+    public boolean isDilate() {
+        return dilate;
+    }
+
+    @Override public void apply(RawImage source, RawImage target, FilterScratch scratch) {
+        checkImages(source, target, scratch);
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int[] input = source.getUntrackedBuffer();
+        final int[] intermediate = scratch.getBuffer(0, width * height);
+        final int[] output = target.getUntrackedBuffer();
+
+        // Horizontal pass into the intermediate buffer
+        ParallelRange.forRange(0, height, minRowsPerBand(width), new RangeTask() {
+            @Override public void process(int start, int end) {
+                final int lastX = width - 1;
+                for (int y = start; y < end; y++) {
+                    final int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int result = input[row + x];
+                        for (int k = 1; k <= radius; k++) {
+                            result = combine(result, input[row + clamp(x - k, lastX)]);
+                            result = combine(result, input[row + clamp(x + k, lastX)]);
+                        }
+                        intermediate[row + x] = result;
+                    }
+                }
+            }
+        });
+
+        // Vertical pass from the intermediate buffer, a block of columns at a time
+        ParallelRange.forRange(0, columnBlockCount(width), minColumnBlocksPerBand(height), new RangeTask() {
+            @Override public void process(int start, int end) {
+                final int lastY = height - 1;
+                for (int block = start; block < end; block++) {
+                    final int x1 = block * COLUMN_BLOCK_WIDTH;
+                    final int x2 = Math.min(x1 + COLUMN_BLOCK_WIDTH, width);
+                    for (int y = 0; y < height; y++) {
+                        final int row = y * width;
+                        for (int x = x1; x < x2; x++) {
+                            output[row + x] = intermediate[row + x];
+                        }
+                        for (int k = 1; k <= radius; k++) {
+                            final int aboveRow = clamp(y - k, lastY) * width;
+                            final int belowRow = clamp(y + k, lastY) * width;
+                            for (int x = x1; x < x2; x++) {
+                                output[row + x] = combine(combine(output[row + x], intermediate[aboveRow + x]),
+                                                          intermediate[belowRow + x]);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        target.markAllDirty();
+    }
+
+    /**
+     * @return the per channel maximum of the colors when dilating, or minimum when eroding.
+     */
+    private int combine(int a, int b) {
+        if (dilate) {
+            return Math.max(a >>> 24, b >>> 24) << 24 |
+                   Math.max(a >>> 16 & 0xFF, b >>> 16 & 0xFF) << 16 |
+                   Math.max(a >>> 8 & 0xFF, b >>> 8 & 0xFF) << 8 |
+                   Math.max(a & 0xFF, b & 0xFF);
+        }
+        else {
+            return Math.min(a >>> 24, b >>> 24) << 24 |
+                   Math.min(a >>> 16 & 0xFF, b >>> 16 & 0xFF) << 16 |
+                   Math.min(a >>> 8 & 0xFF, b >>> 8 & 0xFF) << 8 |
+                   Math.min(a & 0xFF, b & 0xFF);
+        }
+    }
+}
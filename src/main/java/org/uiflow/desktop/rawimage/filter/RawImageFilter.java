@@ -0,0 +1,20 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.uiflow.desktop.rawimage.RawImage;
+
+/**
+ * Something that filters the color data of a RawImage, for example a blur.
+ */
+public interface RawImageFilter {
+
+    /**
+     * Filters the source into the target, and marks the target dirty.
+     *
+     * @param source image to filter.
+     * @param target image to write the result to.  Must have the same size as the source, and may be the same image
+     *               as the source, in which case the image is filtered in place.
+     * @param scratch buffers that the filter can use for intermediate results.  Reusing the same scratch for
+     *                several filters and frames avoids allocating new buffers each time.
+     */
+    void apply(RawImage source, RawImage target, FilterScratch scratch);
+}
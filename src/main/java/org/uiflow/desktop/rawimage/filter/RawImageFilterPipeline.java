@@ -0,0 +1,94 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.flowutils.Check;
+import org.uiflow.desktop.rawimage.RawImage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A chain of filters applied one after the other.  The first filter reads the source and writes the target,
+ * and the following filters filter the target in place.  The pipeline keeps its own scratch buffers, so applying it
+ * to images of the same size each frame does not allocate memory for intermediate results.
+ *
+ * The filters run in parallel internally, but a pipeline should only be applied from one thread at a time.
+ */
+public final class RawImageFilterPipeline implements RawImageFilter {
+
+    private final List<RawImageFilter> filters = new ArrayList<RawImageFilter>();
+    private final FilterScratch scratch = new FilterScratch();
+
+    /**
+     * @param filters filters to apply, in order.
+     */
+    public RawImageFilterPipeline(RawImageFilter ... filters) {
+        for (RawImageFilter filter : filters) {
+            addFilter(filter);
+        }
+    }
+
+    /**
+     * Adds a filter to the end of the pipeline.
+     * @return this pipeline, for chaining.
+     */
+    public RawImageFilterPipeline addFilter(RawImageFilter filter) {
+        Check.notNull(filter, "filter");
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * Removes a filter from the pipeline.
+     */
+    public void removeFilter(RawImageFilter filter) {
+        filters.remove(filter);
+    }
+
+    /**
+     * @return the filters in the pipeline, in order.  Read only.
+     */
+    public List<RawImageFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * Filters the image in place.
+     */
+    public void apply(RawImage image) {
+        apply(image, image, scratch);
+    }
+
+    /**
+     * Filters the source into the target, using the scratch buffers of this pipeline.
+     */
+    public void apply(RawImage source, RawImage target) {
+        apply(source, target, scratch);
+    }
+
+    @Override public void apply(RawImage source, RawImage target, FilterScratch scratch) {
+        FilterUtils.checkImages(source, target, scratch);
+
+        if (filters.isEmpty()) {
+            if (source != target) {
+                System.arraycopy(source.getUntrackedBuffer(), 0, target.getUntrackedBuffer(), 0, source.getWidth() * source.getHeight());
+                target.markAllDirty();
+            }
+            return;
+        }
+
+        RawImage input = source;
+        for (RawImageFilter filter : filters) {
+            filter.apply(input, target, scratch);
+            input = target;
+        }
+    }
+
+    /**
+     * Releases the scratch buffers of this pipeline, so that their memory can be reclaimed.
+     * They are allocated again when the pipeline is next applied.
+     */
+    public void releaseBuffers() {
+        scratch.release();
+    }
+}
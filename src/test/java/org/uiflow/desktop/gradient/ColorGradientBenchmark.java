@@ -0,0 +1,84 @@
+package org.uiflow.desktop.gradient;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * Compares the speed of the different ways of getting color codes from a gradient.
+ * Run the main method, the timings are printed to standard out.
+ */
+public class ColorGradientBenchmark {
+
+    private static final int VALUE_COUNT = 1920 * 1080;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 20;
+
+    private enum Mode {
+        SINGLE, BATCH, PARALLEL
+    }
+
+    private static final int[] STOP_COUNTS = {2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws Exception {
+        final double[] values = new double[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            values[i] = 1.2 * Math.sin(i * 0.001) * 0.5 + 0.5;
+        }
+        final int[] colors = new int[VALUE_COUNT];
+
+        final ColorGradient exact = new ColorGradient(ColorGradients.RAINBOW);
+        final ColorGradient lookupTable = new ColorGradient(ColorGradients.RAINBOW).makeReadOnly();
+        final ArrayColorGradient array = ColorGradients.RAINBOW.toArrayGradient();
+        final ColorFunction compiled = ColorGradientCompiler.compile(ColorGradients.RAINBOW);
+
+        for (Mode mode : Mode.values()) {
+            benchmark("TreeMap gradient", exact, mode, values, colors);
+            benchmark("Lookup table gradient", lookupTable, mode, values, colors);
+            benchmark("Array gradient", array, mode, values, colors);
+            benchmark("Compiled gradient", compiled, mode, values, colors);
+        }
+
+        // Compare the allocation free forms for different numbers of stops
+        final Random random = new Random(42);
+        for (int stopCount : STOP_COUNTS) {
+            final ColorGradient gradient = new ColorGradient();
+            for (int i = 0; i < stopCount; i++) {
+                gradient.addColor(i / (stopCount - 1.0), new Color(random.nextInt()));
+            }
+
+            benchmark(stopCount + " stops, lookup table gradient", new ColorGradient(gradient).makeReadOnly(), Mode.BATCH, values, colors);
+            benchmark(stopCount + " stops, array gradient", gradient.toArrayGradient(), Mode.BATCH, values, colors);
+            benchmark(stopCount + " stops, compiled gradient", ColorGradientCompiler.compile(gradient), Mode.BATCH, values, colors);
+        }
+    }
+
+    private static void benchmark(String name, ColorFunction colorFunction, Mode mode, double[] values, int[] colors) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            mapValues(colorFunction, mode, values, colors);
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            mapValues(colorFunction, mode, values, colors);
+        }
+        final double nanosecondsPerValue = (double) (System.nanoTime() - startTime) / ROUNDS / values.length;
+
+        System.out.println(name + ", " + mode.name().toLowerCase() + ": " + String.format("%.2f", nanosecondsPerValue) + " ns per value");
+    }
+
+    private static void mapValues(ColorFunction colorFunction, Mode mode, double[] values, int[] colors) {
+        switch (mode) {
+            case SINGLE:
+                for (int i = 0; i < values.length; i++) {
+                    colors[i] = colorFunction.colorCodeForValue(values[i]);
+                }
+                break;
+            case BATCH:
+                colorFunction.colorCodesForValues(values, 0, 1, colors, 0, 1, values.length);
+                break;
+            case PARALLEL:
+                ColorFunctions.colorCodesForValuesParallel(colorFunction, values, 0, 1, colors, 0, 1, values.length);
+                break;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.uiflow.desktop.gradient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+
+public class ColorGradientCompilerTest {
+
+    @Test
+    public void testCompiledGradientsMatchArrayGradients() throws Exception {
+        final Random random = new Random(42);
+        for (int stops = 0; stops <= 9; stops++) {
+            final ColorGradient gradient = new ColorGradient();
+            for (int i = 0; i < stops; i++) {
+                gradient.addColor(i * 0.7 + random.nextDouble() * 0.5, new Color(random.nextInt(), true));
+            }
+
+            final ArrayColorGradient array = gradient.toArrayGradient();
+            final ColorFunction compiled = ColorGradientCompiler.compile(gradient);
+            final ColorFunction compiledWithMapping = ColorGradientCompiler.compile(gradient, 3, 0.5, -1);
+            final ColorMapper<Double> mapper = new ColorMapper<Double>(array, 3, 0.5, -1, Color.MAGENTA);
+            final ColorFunction compiledMapper = ColorGradientCompiler.compile(mapper);
+
+            for (double value = -8; value < 12; value += 0.0173) {
+                Assert.assertEquals(array.colorCodeForValue(value), compiled.colorCodeForValue(value));
+                Assert.assertEquals(mapper.colorCodeFor(value), compiledWithMapping.colorCodeForValue(value));
+                Assert.assertEquals(mapper.colorCodeFor(value), compiledMapper.colorCodeForValue(value));
+            }
+            Assert.assertEquals(mapper.colorCodeFor(Double.NaN), compiledMapper.colorCodeForValue(Double.NaN));
+            Assert.assertEquals(array.colorCodeForValue(Double.NaN), compiledWithMapping.colorCodeForValue(Double.NaN));
+            Assert.assertEquals(array.colorCodeForValue(Double.NaN), compiled.colorCodeForValue(Double.NaN));
+            Assert.assertEquals(array.colorForValue(0.3), compiled.colorForValue(0.3));
+
+            final float[] values = {-1, 0.5f, 2.5f, 7};
+            final int[] colors = new int[4];
+            compiled.colorCodesForValues(values, 0, 1, colors, 0, 1, 4);
+            for (int i = 0; i < values.length; i++) {
+                Assert.assertEquals(array.colorCodeForValue(values[i]), colors[i]);
+            }
+        }
+    }
+}
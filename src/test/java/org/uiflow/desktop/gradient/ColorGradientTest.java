@@ -0,0 +1,146 @@
+package org.uiflow.desktop.gradient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+
+public class ColorGradientTest {
+
+    @Test
+    public void testLookupTable() throws Exception {
+        final ColorGradient exact = new ColorGradient(Color.BLACK, Color.RED, Color.WHITE);
+        final ColorGradient lookup = new ColorGradient(exact).makeReadOnly();
+
+        Assert.assertEquals(0, exact.getLookupTableSize());
+        Assert.assertEquals(ColorGradient.DEFAULT_LOOKUP_TABLE_SIZE, lookup.getLookupTableSize());
+
+        for (double value = -0.5; value <= 1.5; value += 0.01) {
+            final int expected = exact.colorCodeForValue(value);
+            final int actual = lookup.colorCodeForValue(value);
+            for (int shift = 0; shift < 32; shift += 8) {
+                Assert.assertEquals((expected >>> shift) & 0xFF, (actual >>> shift) & 0xFF, 1);
+            }
+        }
+
+        Assert.assertEquals(Color.BLACK.getRGB(), lookup.colorCodeForValue(-10));
+        Assert.assertEquals(Color.WHITE.getRGB(), lookup.colorCodeForValue(10));
+        Assert.assertEquals(Color.WHITE.getRGB(), lookup.colorCodeForValue(Double.NaN));
+
+        // Without a lookup table the exact color is interpolated from the color stop arrays
+        final ColorGradient readOnlyExact = new ColorGradient(exact).makeReadOnly(0);
+        Assert.assertEquals(0, readOnlyExact.getLookupTableSize());
+        Assert.assertEquals(exact.toArrayGradient().colorCodeForValue(0.123), readOnlyExact.colorCodeForValue(0.123));
+
+        // Single colored gradients work as well
+        final ColorGradient single = new ColorGradient();
+        single.addColor(2, Color.BLUE);
+        single.makeReadOnly();
+        Assert.assertEquals(Color.BLUE.getRGB(), single.colorCodeForValue(-5));
+        Assert.assertEquals(Color.BLUE.getRGB(), single.colorCodeForValue(5));
+    }
+
+    @Test
+    public void testLookupTableWithUnevenStops() throws Exception {
+        // A table spread evenly over the range would lose the short segment, so the colors are interpolated exactly
+        final ColorGradient uneven = new ColorGradient();
+        uneven.addColor(0, Color.BLACK);
+        uneven.addColor(0.001, Color.RED);
+        uneven.addColor(1000, Color.WHITE);
+        uneven.makeReadOnly();
+        Assert.assertEquals(0, uneven.getLookupTableSize());
+        Assert.assertEquals(uneven.toArrayGradient().colorCodeForValue(0.0005), uneven.colorCodeForValue(0.0005));
+        Assert.assertEquals(Color.RED.getRGB(), uneven.colorCodeForValue(0.001));
+
+        // Less uneven stops get a larger table that stays within one step of the exact colors
+        final ColorGradient exact = new ColorGradient();
+        exact.addColor(0, Color.BLACK);
+        exact.addColor(0.1, Color.GREEN);
+        exact.addColor(20, new Color(255, 255, 255, 0));
+        final ColorGradient lookup = new ColorGradient(exact).makeReadOnly();
+        Assert.assertTrue(lookup.getLookupTableSize() > ColorGradient.DEFAULT_LOOKUP_TABLE_SIZE);
+        for (double value = -1; value <= 21; value += 0.000731) {
+            final int expected = exact.colorCodeForValue(value);
+            final int actual = lookup.colorCodeForValue(value);
+            for (int shift = 0; shift < 32; shift += 8) {
+                Assert.assertEquals((expected >>> shift) & 0xFF, (actual >>> shift) & 0xFF, 1);
+            }
+        }
+    }
+
+    @Test
+    public void testArrayGradient() throws Exception {
+        final ColorGradient source = new ColorGradient();
+        source.addColor(-1, new Color(0, 0, 0, 0));
+        source.addColor(0.5, new Color(200, 100, 50));
+        source.addColor(2, Color.WHITE);
+
+        final ArrayColorGradient array = source.toArrayGradient();
+        Assert.assertEquals(3, array.getStopCount());
+        Assert.assertEquals(0.5, array.getPosition(1), 0);
+
+        // The TreeMap, array and read only forms all interpolate the exact same colors
+        final ColorGradient readOnly = new ColorGradient(source).makeReadOnly(0);
+        for (double value = -2; value <= 3; value += 0.0137) {
+            final int expected = source.getColor(value).getRGB();
+            Assert.assertEquals(expected, array.colorCodeForValue(value));
+            Assert.assertEquals(expected, array.colorForValue(value).getRGB());
+            Assert.assertEquals(expected, source.colorCodeForValue(value));
+            Assert.assertEquals(expected, readOnly.colorCodeForValue(value));
+            Assert.assertEquals(expected, readOnly.colorForValue(value).getRGB());
+        }
+        Assert.assertEquals(new Color(200, 100, 50).getRGB(), array.colorCodeForValue(0.5));
+        Assert.assertEquals(Color.WHITE.getRGB(), array.colorCodeForValue(Double.NaN));
+
+        // Built in gradients use exact interpolation
+        Assert.assertEquals(0, ColorGradients.GREYSCALE.getLookupTableSize());
+        Assert.assertEquals(0xFF808080, ColorGradients.GREYSCALE.colorCodeForValue(128 / 255.0));
+        for (double value = 0; value <= 1; value += 0.0007) {
+            Assert.assertEquals(ColorGradients.GREYSCALE.colorForValue(value).getRGB(), ColorGradients.GREYSCALE.colorCodeForValue(value));
+        }
+    }
+
+    @Test
+    public void testBatchColorCodes() throws Exception {
+        final ColorGradient editable = new ColorGradient(Color.BLUE, Color.GREEN, Color.YELLOW, Color.RED);
+        final ColorFunction[] functions = {editable,
+                                           new ColorGradient(editable).makeReadOnly(),
+                                           new ColorGradient(editable).makeReadOnly(0),
+                                           editable.toArrayGradient(),
+                                           new SolidColorFunction(Color.ORANGE)};
+
+        // Interleaved values, mapped to every other target entry
+        final int count = 50000;
+        final float[] floatValues = new float[2 * count];
+        final double[] doubleValues = new double[2 * count];
+        for (int i = 0; i < count; i++) {
+            final double value = i % 7 == 0 ? Double.NaN : Math.sin(i * 0.01) * 1.2;
+            floatValues[2 * i + 1] = (float) value;
+            doubleValues[2 * i + 1] = (float) value;
+        }
+
+        for (ColorFunction function : functions) {
+            final int[] fromDoubles = new int[2 * count + 1];
+            final int[] fromFloats = new int[2 * count + 1];
+            final int[] parallel = new int[2 * count + 1];
+            function.colorCodesForValues(doubleValues, 1, 2, fromDoubles, 1, 2, count);
+            function.colorCodesForValues(floatValues, 1, 2, fromFloats, 1, 2, count);
+            ColorFunctions.colorCodesForValuesParallel(function, floatValues, 1, 2, parallel, 1, 2, count);
+
+            for (int i = 0; i < count; i++) {
+                final int expected = function.colorCodeForValue(doubleValues[2 * i + 1]);
+                Assert.assertEquals(expected, fromDoubles[2 * i + 1]);
+                Assert.assertEquals(expected, fromFloats[2 * i + 1]);
+                Assert.assertEquals(expected, parallel[2 * i + 1]);
+                Assert.assertEquals(0, parallel[2 * i]);
+            }
+            Assert.assertEquals(0, parallel[2 * count]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchColorCodesOutOfBounds() throws Exception {
+        ColorGradients.GREYSCALE.colorCodesForValues(new double[10], 1, 2, new int[10], 0, 1, 6);
+    }
+}
@@ -0,0 +1,44 @@
+package org.uiflow.desktop.gradient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+
+public class ColorMapperTest {
+
+    @Test
+    public void testPrimitiveMapping() throws Exception {
+        final ColorMapper<Double> mapper = new ColorMapper<Double>(ColorGradients.GREYSCALE, 10, 0.5, 0.25, Color.RED);
+
+        // (-9.5 + 10) * 0.5 + 0.25 = 0.5
+        Assert.assertEquals(ColorGradients.GREYSCALE.colorCodeForValue(0.5), mapper.colorCodeFor(-9.5));
+        Assert.assertEquals(ColorGradients.GREYSCALE.colorForValue(0.5), mapper.convert(-9.5));
+        Assert.assertEquals(Color.RED.getRGB(), mapper.colorCodeFor(Double.NaN));
+        Assert.assertEquals(mapper.colorCodeFor(Double.NaN), mapper.convert(Double.NaN).getRGB());
+        Assert.assertEquals(Color.RED, mapper.convert(null));
+
+        final double[] values = {-9.5, Double.NaN, -10, 100};
+        final int[] colors = new int[4];
+        mapper.colorCodesFor(values, 0, 1, colors, 0, 1, 4);
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(mapper.colorCodeFor(values[i]), colors[i]);
+        }
+
+        // Without mapping the values are passed to the color function in one batch
+        final ColorMapper<Float> identity = new ColorMapper<Float>(ColorGradients.GREYSCALE, Color.BLUE);
+        final float[] floatValues = {0.25f, Float.NaN, 2};
+        final int[] floatColors = new int[3];
+        identity.colorCodesFor(floatValues, 0, 1, floatColors, 0, 1, 3);
+        Assert.assertEquals(ColorGradients.GREYSCALE.colorCodeForValue(0.25), floatColors[0]);
+        Assert.assertEquals(Color.BLUE.getRGB(), floatColors[1]);
+        Assert.assertEquals(Color.WHITE.getRGB(), floatColors[2]);
+
+        // Everything gets the default color without a color function
+        final ColorMapper<Float> empty = new ColorMapper<Float>();
+        empty.colorCodesFor(floatValues, 0, 1, floatColors, 0, 1, 3);
+        Assert.assertEquals(Color.DARK_GRAY.getRGB(), floatColors[0]);
+        Assert.assertEquals(Color.DARK_GRAY, empty.convert(1f));
+    }
+}
@@ -0,0 +1,38 @@
+package org.uiflow.desktop.parallel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ParallelRangeTest {
+
+    @Test
+    public void testRunsInRequestedPoolFromOtherPool() throws Exception {
+        final ForkJoinPool outerPool = new ForkJoinPool(2);
+        final ForkJoinPool innerPool = new ForkJoinPool(2);
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger inWrongPool = new AtomicInteger();
+
+        outerPool.invoke(new RecursiveAction() {
+            @Override protected void compute() {
+                ParallelRange.forRange(innerPool, 0, 1000, 10, new RangeTask() {
+                    @Override public void process(int start, int end) {
+                        processed.addAndGet(end - start);
+                        if (ForkJoinTask.getPool() != innerPool) inWrongPool.incrementAndGet();
+                    }
+                });
+            }
+        });
+
+        Assert.assertEquals(1000, processed.get());
+        Assert.assertEquals(0, inWrongPool.get());
+
+        outerPool.shutdown();
+        innerPool.shutdown();
+    }
+}
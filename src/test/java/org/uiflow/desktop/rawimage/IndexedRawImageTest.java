@@ -0,0 +1,44 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+
+public class IndexedRawImageTest {
+
+    @Test
+    public void testPaletteImage() throws Exception {
+        final IndexedRawImage image = new IndexedRawImage(10, 8, 0xFF000000, 0xFFFF0000, 0xFF00FF00);
+        image.fillRect(5, 4, 10, 10, 2);
+        image.setPixel(0, 0, 1);
+        image.setPixel(1, 0, 200);
+
+        // Rectangles completely to the side of the image are ignored
+        image.fillRect(20, 0, 5, 5, 1);
+        image.fillRect(-20, 0, 5, 5, 1);
+        image.fillRect(0, -20, 5, 5, 1);
+        Assert.assertEquals(0, image.getPixel(0, 1));
+        Assert.assertEquals(0, image.getPixel(9, 1));
+
+        Assert.assertEquals(2, image.getPixel(9, 7));
+        Assert.assertEquals(0xFF00FF00, image.getColor(9, 7));
+        Assert.assertEquals(200, image.getPixel(1, 0));
+
+        // The buffered image shows the pixel data directly
+        final BufferedImage bufferedImage = image.getImage();
+        Assert.assertEquals(0xFFFF0000, bufferedImage.getRGB(0, 0));
+        Assert.assertEquals(0xFF00FF00, bufferedImage.getRGB(5, 4));
+
+        // Recoloring only changes the palette
+        image.setPaletteColor(2, 0xFF0000FF);
+        Assert.assertEquals(0xFF0000FF, image.getImage().getRGB(5, 4));
+
+        final RawImage rawImage = new RawImage(10, 8);
+        image.copyTo(rawImage);
+        Assert.assertEquals(0xFF0000FF, rawImage.getPixel(9, 7));
+        Assert.assertEquals(0xFFFF0000, rawImage.getPixel(0, 0));
+        Assert.assertEquals(0xFF000000, rawImage.getPixel(4, 4));
+    }
+}
@@ -0,0 +1,41 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+
+public class OffHeapRawImageTest {
+
+    @Test
+    public void testMappedImageAndViewport() throws Exception {
+        final File file = File.createTempFile("offheap", ".raw");
+        file.delete();
+        file.deleteOnExit();
+
+        final OffHeapRawImage image = OffHeapRawImage.createMapped(file, 300, 200);
+        Assert.assertEquals(0xFF000000, image.getPixel(299, 199));
+
+        image.setPixel(120, 80, 0xFF112233);
+        image.fillRect(290, 190, 20, 20, 0xFF00FF00);
+
+        // View partly outside the image
+        final RawImageViewport viewport = new RawImageViewport(image, 100, 70, 0xFFFFFFFF);
+        final RawImage target = new RawImage(250, 150, RawImageBackend.BUFFERED_IMAGE_RGB);
+        viewport.renderImage(target);
+
+        Assert.assertEquals(0xFF112233, target.getPixel(20, 10));
+        Assert.assertEquals(0xFF00FF00, target.getPixel(199, 129));
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(200, 129));
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(100, 130));
+        Assert.assertEquals(0xFF000000, target.getPixel(0, 0));
+
+        image.close();
+
+        // The data is kept in the file
+        final OffHeapRawImage reopened = OffHeapRawImage.createMapped(file, 300, 200);
+        Assert.assertEquals(0xFF112233, reopened.getPixel(120, 80));
+        reopened.close();
+    }
+}
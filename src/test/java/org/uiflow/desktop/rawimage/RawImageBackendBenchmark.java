@@ -0,0 +1,57 @@
+package org.uiflow.desktop.rawimage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Compares the render-and-blit latency of the different RawImage backends.
+ * Each frame renders the whole image, flushes it, and draws it onto an off-screen image.
+ * Run the main method, the timings are printed to standard out.
+ */
+public class RawImageBackendBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        final BufferedImage screen = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        final RawImageRenderer renderer = new RawImageRendererBase() {
+            private int frame = 0;
+
+            @Override protected void prepareRendering(RawImage target, int width, int height) {
+                frame++;
+            }
+
+            @Override protected int getPixelColor(int x, int y, int totalWidth, int totalHeight) {
+                return 0xFF000000 | ((x + frame) & 0xFF) << 16 | (y & 0xFF) << 8 | ((x ^ y) & 0xFF);
+            }
+        };
+
+        for (RawImageBackend backend : RawImageBackend.values()) {
+            final RawImage image = new RawImage(WIDTH, HEIGHT, backend);
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                renderAndBlit(renderer, image, screen);
+            }
+
+            final long startTime = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                renderAndBlit(renderer, image, screen);
+            }
+            final long nanosPerFrame = (System.nanoTime() - startTime) / ROUNDS;
+
+            System.out.println(backend + ": " + nanosPerFrame / 1000 + " us per frame");
+        }
+    }
+
+    private static void renderAndBlit(RawImageRenderer renderer, RawImage image, BufferedImage screen) {
+        renderer.renderImage(image);
+
+        final Graphics graphics = screen.getGraphics();
+        image.renderToGraphics(graphics);
+        graphics.dispose();
+    }
+}
@@ -0,0 +1,83 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+
+public class RawImageCompositorTest {
+
+    @Test
+    public void testCompositeLayers() throws Exception {
+        final RawImage bottom = new RawImage(10, 10);
+        bottom.clearToColor(0xFFFF0000);
+        final RawImage top = new RawImage(5, 5);
+        top.clearToColor(0xFF0000FF);
+
+        final RawImageCompositor compositor = new RawImageCompositor();
+        compositor.addLayer(bottom);
+        final RawImageCompositor.Layer topLayer = compositor.addLayer(top, CompositeMode.SOURCE_OVER, 0.5);
+
+        final RawImage target = new RawImage(10, 10, RawImageBackend.BUFFERED_IMAGE_ARGB);
+        compositor.composite(target);
+
+        final int blended = target.getPixel(2, 2);
+        Assert.assertEquals(0xFF, blended >>> 24);
+        Assert.assertEquals(128, (blended >> 16) & 0xFF, 2);
+        Assert.assertEquals(128, blended & 0xFF, 2);
+        Assert.assertEquals(0xFFFF0000, target.getPixel(7, 7));
+
+        // Only the changed region of a layer is recomposited
+        target.flush();
+        top.setPixel(1, 1, 0x00000000);
+        compositor.composite(target);
+        Assert.assertEquals(0xFFFF0000, target.getPixel(1, 1));
+        Assert.assertEquals(new Rectangle(1, 1, 1, 1), target.getDirtyRegions().get(0));
+
+        // Modes that affect the destination outside the layer recomposite everything
+        target.flush();
+        topLayer.setOpacity(1.0);
+        topLayer.setMode(CompositeMode.DESTINATION_IN);
+        compositor.composite(target);
+        Assert.assertEquals(0xFFFF0000, target.getPixel(2, 2));
+        Assert.assertEquals(0x00000000, target.getPixel(1, 1));
+        Assert.assertEquals(0x00000000, target.getPixel(7, 7));
+        Assert.assertEquals(new Rectangle(0, 0, 10, 10), target.getDirtyRegions().get(0));
+
+        // Hidden layers are skipped
+        topLayer.setVisible(false);
+        compositor.composite(target);
+        Assert.assertEquals(0xFFFF0000, target.getPixel(7, 7));
+    }
+
+    @Test
+    public void testSeparateDirtyRegions() throws Exception {
+        final RawImage layer = new RawImage(100, 100);
+        layer.clearToColor(0xFF00FF00);
+
+        final RawImageCompositor compositor = new RawImageCompositor();
+        compositor.addLayer(layer);
+        final RawImage target = new RawImage(100, 100);
+        compositor.composite(target);
+        target.flush();
+
+        // Mark pixels between the changes, which should not be recomposited
+        final int[] targetData = target.getUntrackedBuffer();
+        targetData[50 * 100 + 50] = 0xFF123456;
+        targetData[99 * 100 + 0] = 0xFF123456;
+
+        // Changes in opposite corners are recomposited separately
+        layer.setPixel(0, 0, 0xFFFFFFFF);
+        layer.setPixel(99, 99, 0xFFFFFFFF);
+        compositor.markDirty(80, 0, 5, 5);
+        compositor.composite(target);
+
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(0, 0));
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(99, 99));
+        Assert.assertEquals(0xFF00FF00, target.getPixel(82, 2));
+        Assert.assertEquals(0xFF123456, target.getPixel(50, 50));
+        Assert.assertEquals(0xFF123456, target.getPixel(0, 99));
+        Assert.assertEquals(3, target.getDirtyRegions().size());
+    }
+}
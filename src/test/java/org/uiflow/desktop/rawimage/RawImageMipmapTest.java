@@ -0,0 +1,60 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class RawImageMipmapTest {
+
+    @Test
+    public void testLevels() throws Exception {
+        final RawImage image = new RawImage(5, 3);
+        image.clearToColor(0xFF000000);
+        image.setPixel(0, 0, 0xFFFFFFFF);
+        image.setPixel(1, 0, 0xFFFFFFFF);
+
+        final RawImageMipmap mipmap = new RawImageMipmap(image);
+        Assert.assertEquals(4, mipmap.getLevelCount());
+        Assert.assertSame(image, mipmap.getLevel(0));
+        Assert.assertEquals(3, mipmap.getLevel(1).getWidth());
+        Assert.assertEquals(2, mipmap.getLevel(1).getHeight());
+        Assert.assertEquals(1, mipmap.getLevel(3).getWidth());
+
+        // Half of the two by two block is white
+        Assert.assertEquals(0xFF808080, mipmap.getLevel(1).getPixel(0, 0));
+        Assert.assertEquals(0xFF000000, mipmap.getLevel(1).getPixel(2, 1));
+
+        // Only the changed region is updated
+        image.getUntrackedBuffer()[4] = 0xFFFFFFFF;
+        image.getUntrackedBuffer()[0] = 0xFF000000;
+        mipmap.update(4, 0, 1, 1);
+        Assert.assertEquals(0xFF808080, mipmap.getLevel(1).getPixel(2, 0));
+        Assert.assertEquals(0xFF808080, mipmap.getLevel(1).getPixel(0, 0));
+
+        Assert.assertEquals(0, mipmap.getLevelForScale(1.5));
+        Assert.assertEquals(1, mipmap.getLevelForScale(0.5));
+        Assert.assertEquals(1, mipmap.getLevelForScale(0.3));
+        Assert.assertEquals(3, mipmap.getLevelForScale(0.001));
+    }
+
+    @Test
+    public void testSetSource() throws Exception {
+        final RawImage front = new RawImage(8, 8);
+        front.clearToColor(0xFF000000);
+        final RawImage back = new RawImage(8, 8);
+        back.clearToColor(0xFFFFFFFF);
+
+        // Swapping to an image of the same size reuses the levels
+        final RawImageMipmap mipmap = new RawImageMipmap(front);
+        final RawImage level1 = mipmap.getLevel(1);
+        mipmap.setSource(back);
+        Assert.assertSame(back, mipmap.getSource());
+        Assert.assertSame(level1, mipmap.getLevel(1));
+        Assert.assertEquals(0xFFFFFFFF, mipmap.getLevel(3).getPixel(0, 0));
+
+        // A different size gets new levels
+        mipmap.setSource(new RawImage(16, 16));
+        Assert.assertEquals(5, mipmap.getLevelCount());
+        Assert.assertEquals(8, mipmap.getLevel(1).getWidth());
+    }
+}
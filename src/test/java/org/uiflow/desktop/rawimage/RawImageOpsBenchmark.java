@@ -0,0 +1,95 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * Compares the bulk operations in RawImageOps with the equivalent per pixel loops using getPixel and setPixel.
+ * Run the main method, the timings are printed to standard out.
+ */
+public class RawImageOpsBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        final RawImage source = new RawImage(WIDTH, HEIGHT);
+        final RawImage target = new RawImage(WIDTH, HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                source.setPixel(x, y, ((x ^ y) & 0xFF) << 24 | x << 8 | y);
+            }
+        }
+
+        benchmark("fill, per pixel", new Runnable() {
+            @Override public void run() {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        target.setPixel(x, y, 0xFF102030);
+                    }
+                }
+            }
+        });
+
+        benchmark("fill, bulk", new Runnable() {
+            @Override public void run() {
+                RawImageOps.fill(target, 0, 0, WIDTH, HEIGHT, 0xFF102030);
+            }
+        });
+
+        benchmark("blit, per pixel", new Runnable() {
+            @Override public void run() {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        target.setPixel(x, y, source.getPixel(x, y));
+                    }
+                }
+            }
+        });
+
+        benchmark("blit, bulk", new Runnable() {
+            @Override public void run() {
+                RawImageOps.blit(source, 0, 0, WIDTH, HEIGHT, target, 0, 0);
+            }
+        });
+
+        benchmark("alpha blend, per pixel", new Runnable() {
+            @Override public void run() {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        final double a = source.getAlpha(x, y);
+                        target.setPixel(x, y,
+                                        target.getRed(x, y) * (1 - a) + source.getRed(x, y) * a,
+                                        target.getGreen(x, y) * (1 - a) + source.getGreen(x, y) * a,
+                                        target.getBlue(x, y) * (1 - a) + source.getBlue(x, y) * a);
+                    }
+                }
+            }
+        });
+
+        benchmark("alpha blend, bulk", new Runnable() {
+            @Override public void run() {
+                RawImageOps.alphaBlend(source, 0, 0, WIDTH, HEIGHT, target, 0, 0, 1.0);
+            }
+        });
+
+        benchmark("scale channels, bulk", new Runnable() {
+            @Override public void run() {
+                RawImageOps.scaleChannels(target, 0, 0, WIDTH, HEIGHT, 0.9, 1.0, 1.1, 1.0);
+            }
+        });
+    }
+
+    private static void benchmark(String name, Runnable operation) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            operation.run();
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            operation.run();
+        }
+        final double millisecondsPerRound = (System.nanoTime() - startTime) / 1000000.0 / ROUNDS;
+
+        System.out.println(name + ": " + String.format("%.2f", millisecondsPerRound) + " ms per 1920x1080 image");
+    }
+}
@@ -0,0 +1,82 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+
+public class RawImageOpsTest {
+
+    @Test
+    public void testFillAndBlit() throws Exception {
+        final RawImage image = new RawImage(40, 30);
+        image.flush();
+
+        // Fill covers the last row and column of the image
+        RawImageOps.fill(image, 30, 20, 20, 20, 0xFF00FF00);
+        Assert.assertEquals(0xFF00FF00, image.getPixel(39, 29));
+        Assert.assertEquals(0xFF000000, image.getPixel(29, 19));
+        Assert.assertEquals(new Rectangle(30, 20, 10, 10), image.getDirtyRegions().get(0));
+
+        // Blit is clipped to both images
+        final RawImage target = new RawImage(20, 20);
+        RawImageOps.blit(image, 25, 15, 20, 20, target, -2, 0);
+        Assert.assertEquals(0xFF000000, target.getPixel(2, 4));
+        Assert.assertEquals(0xFF00FF00, target.getPixel(3, 5));
+        Assert.assertEquals(0xFF00FF00, target.getPixel(12, 14));
+        Assert.assertEquals(0xFF000000, target.getPixel(13, 14));
+        Assert.assertEquals(0xFF000000, target.getPixel(12, 15));
+    }
+
+    @Test
+    public void testAlphaBlend() throws Exception {
+        final RawImage source = new RawImage(4, 4);
+        source.clearToColor(0x80FF0000);
+        final RawImage target = new RawImage(4, 4);
+        target.clearToColor(0xFF0000FF);
+
+        RawImageOps.alphaBlend(source, 0, 0, 4, 4, target, 0, 0, 1.0);
+        final int color = target.getPixel(1, 1);
+        Assert.assertEquals(0xFF, color >>> 24);
+        Assert.assertEquals(128, (color >> 16) & 0xFF, 1);
+        Assert.assertEquals(127, color & 0xFF, 1);
+
+        // Fully opaque sources replace the target
+        source.clearToColor(0xFF123456);
+        RawImageOps.alphaBlend(source, 0, 0, 4, 4, target, 0, 0, 1.0);
+        Assert.assertEquals(0xFF123456, target.getPixel(2, 2));
+    }
+
+    @Test
+    public void testScaleChannels() throws Exception {
+        final RawImage image = new RawImage(3, 3);
+        image.clearToColor(0xFF808080);
+
+        RawImageOps.scaleChannels(image, 0, 0, 3, 3, 0.5, 1.0, 4.0, 1.0);
+        Assert.assertEquals(0xFF4080FF, image.getPixel(1, 1));
+    }
+
+    @Test
+    public void testPackAndUnpack() throws Exception {
+        final RawImage image = new RawImage(2, 2);
+        image.setPixel(1, 1, 1.0, 0.5, 0.0, 1.0);
+        Assert.assertEquals(new Color(255, 128, 0).getRGB(), image.getPixel(1, 1));
+        Assert.assertEquals(1.0, image.getRed(1, 1), 0.001);
+        Assert.assertEquals(0.0, image.getBlue(1, 1), 0.001);
+
+        final float[] red = {0f, 1f, 0.25f};
+        final float[] green = {0f, 0f, 0.5f};
+        final float[] blue = {1f, 0f, 2f};
+        final int[] colors = new int[4];
+        RawImageOps.packColors(red, green, blue, null, 0, colors, 1, 3);
+        Assert.assertEquals(0xFF0000FF, colors[1]);
+        Assert.assertEquals(0xFFFF0000, colors[2]);
+        Assert.assertEquals(0xFF4080FF, colors[3]);
+
+        final float[] unpacked = new float[3];
+        RawImageOps.unpackColors(colors, 1, unpacked, new float[3], new float[3], null, 0, 3);
+        Assert.assertEquals(1f, unpacked[1], 0.001f);
+        Assert.assertEquals(0.25f, unpacked[2], 0.002f);
+    }
+}
@@ -0,0 +1,89 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class RawImageRendererBaseTest {
+
+    @Test
+    public void testParallelRenderingMatchesSequential() throws Exception {
+        final RawImage sequentialImage = new RawImage(321, 517);
+        final RawImage parallelImage = new RawImage(321, 517);
+
+        final TestRenderer sequentialRenderer = new TestRenderer();
+        sequentialRenderer.setParallelRenderingEnabled(false);
+        sequentialRenderer.renderImage(sequentialImage);
+
+        final TestRenderer parallelRenderer = new TestRenderer();
+        parallelRenderer.renderImage(parallelImage);
+
+        Assert.assertArrayEquals(sequentialImage.getBuffer(), parallelImage.getBuffer());
+
+        // Preparation and finishing should only be done once, even when rendering in parallel
+        Assert.assertEquals(1, parallelRenderer.prepareCount.get());
+        Assert.assertEquals(1, parallelRenderer.finishCount.get());
+        Assert.assertEquals(321 * 517, parallelRenderer.pixelCount.get());
+    }
+
+    @Test
+    public void testRenderRegion() throws Exception {
+        final RawImage image = new RawImage(200, 100);
+        image.flush();
+
+        final TestRenderer renderer = new TestRenderer();
+        renderer.renderRegion(image, 150, -10, 100, 30);
+
+        // Only pixels in the region, clipped to the image, are rendered
+        Assert.assertEquals(50 * 20, renderer.pixelCount.get());
+        Assert.assertEquals(0xFF000000, image.getPixel(149, 0));
+        Assert.assertEquals(0xFF000000, image.getPixel(150, 20));
+        Assert.assertEquals(150 * 31 + 19 * 7919 + 200 * 100, image.getPixel(150, 19));
+        Assert.assertFalse(image.isDirty());
+    }
+
+    @Test
+    public void testIncrementalRendering() throws Exception {
+        final RawImage incrementalImage = new RawImage(64, 48);
+        final RawImage fullImage = new RawImage(64, 48);
+
+        final TestRenderer renderer = new TestRenderer();
+        renderer.renderImage(fullImage);
+
+        // With no time budget, one row is rendered per call
+        int calls = 1;
+        while (!renderer.renderIncrementally(incrementalImage, 0)) {
+            calls++;
+        }
+
+        Assert.assertEquals(48, calls);
+        Assert.assertArrayEquals(fullImage.getBuffer(), incrementalImage.getBuffer());
+        Assert.assertEquals(2, renderer.prepareCount.get());
+        Assert.assertEquals(2, renderer.finishCount.get());
+    }
+
+    private static final class TestRenderer extends RawImageRendererBase {
+        private final AtomicInteger prepareCount = new AtomicInteger();
+        private final AtomicInteger finishCount = new AtomicInteger();
+        private final AtomicInteger pixelCount = new AtomicInteger();
+
+        @Override protected boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override protected void prepareRendering(RawImage target, int width, int height) {
+            prepareCount.incrementAndGet();
+        }
+
+        @Override protected int getPixelColor(int x, int y, int totalWidth, int totalHeight) {
+            pixelCount.incrementAndGet();
+            return x * 31 + y * 7919 + totalWidth * totalHeight;
+        }
+
+        @Override protected void finishRendering(RawImage target, int width, int height) {
+            finishCount.incrementAndGet();
+        }
+    }
+}
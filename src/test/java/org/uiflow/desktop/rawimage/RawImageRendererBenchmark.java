@@ -0,0 +1,85 @@
+package org.uiflow.desktop.rawimage;
+
+/**
+ * Compares the throughput of a gradient renderer implemented per pixel and per span.
+ * Run the main method, the timings are printed to standard out.
+ */
+public class RawImageRendererBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        final RawImage image = new RawImage(WIDTH, HEIGHT);
+
+        final PixelGradientRenderer pixelRenderer = new PixelGradientRenderer();
+        final SpanGradientRenderer spanRenderer = new SpanGradientRenderer();
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            pixelRenderer.setParallelRenderingEnabled(parallel);
+            spanRenderer.setParallelRenderingEnabled(parallel);
+
+            final String mode = parallel ? "parallel" : "sequential";
+            report("Per pixel, " + mode, benchmark(pixelRenderer, image));
+            report("Per span,  " + mode, benchmark(spanRenderer, image));
+        }
+    }
+
+    private static long benchmark(RawImageRenderer renderer, RawImage image) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            renderer.renderImage(image);
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            renderer.renderImage(image);
+        }
+        return (System.nanoTime() - startTime) / ROUNDS;
+    }
+
+    private static void report(String name, long nanosPerFrame) {
+        final double megaPixelsPerSecond = (double) WIDTH * HEIGHT / nanosPerFrame * 1000.0;
+        System.out.println(name + ": " + nanosPerFrame / 1000 + " us per frame, " + (int) megaPixelsPerSecond + " Mpixels / s");
+    }
+
+    private static int gradientColor(int x, int y, int totalWidth, int totalHeight) {
+        final int red = 255 * x / totalWidth;
+        final int green = 255 * y / totalHeight;
+        final int blue = 255 - (red + green) / 2;
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    private static final class PixelGradientRenderer extends RawImageRendererBase {
+        @Override protected boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override protected int getPixelColor(int x, int y, int totalWidth, int totalHeight) {
+            return gradientColor(x, y, totalWidth, totalHeight);
+        }
+    }
+
+    private static final class SpanGradientRenderer extends RawImageSpanRendererBase {
+        @Override protected boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override protected void renderSpan(int[] buffer, int offset, int x, int y, int length, int totalWidth, int totalHeight) {
+            // Everything that only depends on the row is calculated once
+            final int green = 255 * y / totalHeight;
+            final int rowColor = 0xFF000000 | (green << 8);
+
+            // Step the red component with a fixed point increment instead of dividing for each pixel
+            final int redStep = (255 << 16) / totalWidth;
+            int red = x * redStep;
+            final int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                final int r = red >> 16;
+                buffer[i] = rowColor | (r << 16) | (255 - ((r + green) >> 1));
+                red += redStep;
+            }
+        }
+    }
+}
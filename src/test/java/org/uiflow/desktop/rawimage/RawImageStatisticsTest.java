@@ -0,0 +1,42 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class RawImageStatisticsTest {
+
+    @Test
+    public void testStatistics() throws Exception {
+        final RawImage image = new RawImage(400, 300);
+        image.clearToColor(0xFF000000);
+        image.fillRect(0, 0, 100, 300, 0xFFFF0000);
+        image.fillRect(390, 290, 10, 10, 0x80FFFFFF);
+
+        final RawImageStatistics statistics = new RawImageStatistics();
+        statistics.update(image);
+
+        Assert.assertEquals(120000, statistics.getPixelCount());
+        Assert.assertEquals(30000 + 100, statistics.getCount(ImageChannel.RED, 255));
+        Assert.assertEquals(100, statistics.getCount(ImageChannel.ALPHA, 0x80));
+        Assert.assertEquals(100, statistics.getCount(ImageChannel.LUMINANCE, 255));
+        Assert.assertEquals(0, statistics.getMinimum(ImageChannel.RED));
+        Assert.assertEquals(255, statistics.getMaximum(ImageChannel.BLUE));
+        Assert.assertEquals(255 * 30100 / 120000.0, statistics.getMean(ImageChannel.RED), 0.0001);
+        Assert.assertEquals(0, statistics.getPercentile(ImageChannel.RED, 0.5));
+        Assert.assertEquals(255, statistics.getPercentile(ImageChannel.RED, 0.9));
+
+        final int[] histogram = statistics.getHistogram(ImageChannel.GREEN, null);
+        Assert.assertEquals(120000 - 100, histogram[0]);
+
+        // Region statistics
+        statistics.update(image, 50, 0, 100, 10);
+        Assert.assertEquals(1000, statistics.getPixelCount());
+        Assert.assertEquals(0.5 * 255, statistics.getMean(ImageChannel.RED), 0.0001);
+        Assert.assertEquals(0, statistics.getCount(ImageChannel.ALPHA, 0x80));
+
+        // Huge regions are clipped to the image instead of overflowing
+        statistics.update(image, 1, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        Assert.assertEquals(image.getWidth() * image.getHeight() - image.getHeight(), statistics.getPixelCount());
+    }
+}
@@ -0,0 +1,31 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class RawImageStoreTest {
+
+    @Test
+    public void testBufferIsReused() throws Exception {
+        final RawImageStore store = new RawImageStore(RawImageBackend.BUFFERED_IMAGE_RGB, 1000);
+
+        final RawImage image = store.getImage(30, 20);
+        Assert.assertEquals(30, image.getWidth());
+        Assert.assertEquals(20, image.getHeight());
+        Assert.assertEquals(1000, store.getCapacity());
+
+        // Same size gives same image
+        Assert.assertSame(image, store.getImage(30, 20));
+
+        // Smaller and slightly larger sizes fit in the same array
+        final int[] buffer = image.getBuffer();
+        Assert.assertSame(buffer, store.getImage(10, 10).getBuffer());
+        Assert.assertSame(buffer, store.getImage(40, 25).getBuffer());
+
+        // Growing past the capacity grows in steps
+        final RawImage largeImage = store.getImage(50, 30);
+        Assert.assertEquals(2000, store.getCapacity());
+        Assert.assertSame(largeImage, store.getCurrentImage());
+    }
+}
@@ -0,0 +1,85 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+
+public class RawImageTest {
+
+    @Test
+    public void testDirtyRegions() throws Exception {
+        final RawImage image = new RawImage(100, 80);
+
+        // Newly created image is cleared, so all of it needs to be flushed
+        Assert.assertTrue(image.isDirty());
+        image.flush();
+        Assert.assertFalse(image.isDirty());
+
+        image.setPixel(10, 10, 0xFFFF0000);
+        image.setPixel(11, 10, 0xFFFF0000);
+        image.fillRect(50, 40, 20, 20, 0xFF00FF00);
+
+        final List<Rectangle> regions = image.getDirtyRegions();
+        Assert.assertEquals(2, regions.size());
+        Assert.assertEquals(new Rectangle(10, 10, 2, 1), regions.get(0));
+        Assert.assertEquals(new Rectangle(50, 40, 20, 20), regions.get(1));
+
+        image.flush();
+        Assert.assertFalse(image.isDirty());
+
+        // Regions outside the image are ignored, and regions partially outside are clipped
+        image.markDirty(-20, -20, 10, 10);
+        Assert.assertFalse(image.isDirty());
+        image.markDirty(90, 70, 20, 20);
+        Assert.assertEquals(new Rectangle(90, 70, 10, 10), image.getDirtyRegions().get(0));
+
+        // Many separate regions are merged
+        for (int i = 0; i < 20; i++) {
+            image.markDirty(i * 4, i * 3, 1, 1);
+        }
+        Assert.assertTrue(image.getDirtyRegions().size() <= 8);
+
+        image.getBuffer();
+        Assert.assertEquals(new Rectangle(0, 0, 100, 80), image.getDirtyRegions().get(0));
+    }
+
+    @Test
+    public void testBufferedImageBackendSharesBuffer() throws Exception {
+        final RawImage image = new RawImage(30, 20, RawImageBackend.BUFFERED_IMAGE_RGB);
+        final BufferedImage bufferedImage = image.createBufferedImage();
+
+        Assert.assertEquals(BufferedImage.TYPE_INT_RGB, bufferedImage.getType());
+        Assert.assertSame(image.getImage(), bufferedImage);
+
+        // Changes are visible without flushing
+        image.setPixel(3, 4, 0xFF123456);
+        Assert.assertEquals(0xFF123456, bufferedImage.getRGB(3, 4));
+
+        image.flush();
+        Assert.assertFalse(image.isDirty());
+    }
+
+    @Test
+    public void testScaleUpFrom() throws Exception {
+        final RawImage source = new RawImage(2, 2);
+        source.setPixel(0, 0, 1);
+        source.setPixel(1, 0, 2);
+        source.setPixel(0, 1, 3);
+        source.setPixel(1, 1, 4);
+
+        // Target is larger than the scaled up source, so the last row and column are repeated
+        final RawImage target = new RawImage(5, 7);
+        target.scaleUpFrom(source, 2);
+
+        Assert.assertEquals(1, target.getPixel(1, 1));
+        Assert.assertEquals(2, target.getPixel(2, 0));
+        Assert.assertEquals(2, target.getPixel(4, 1));
+        Assert.assertEquals(3, target.getPixel(0, 2));
+        Assert.assertEquals(4, target.getPixel(3, 3));
+        Assert.assertEquals(4, target.getPixel(4, 6));
+    }
+}
@@ -0,0 +1,104 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+
+public class RawRasterizerTest {
+
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Test
+    public void testLines() throws Exception {
+        final RawImage image = new RawImage(20, 20);
+        image.flush();
+        final RawRasterizer rasterizer = new RawRasterizer(image);
+
+        rasterizer.drawLine(-5, 2, 30, 2, WHITE);
+        Assert.assertEquals(WHITE, image.getPixel(0, 2));
+        Assert.assertEquals(WHITE, image.getPixel(19, 2));
+        Assert.assertEquals(BLACK, image.getPixel(5, 3));
+
+        rasterizer.drawLine(3, 5, 8, 10, WHITE);
+        for (int i = 0; i <= 5; i++) {
+            Assert.assertEquals(WHITE, image.getPixel(3 + i, 5 + i));
+        }
+        Assert.assertEquals(BLACK, image.getPixel(9, 11));
+
+        // Changes are only marked dirty when requested
+        Assert.assertFalse(image.isDirty());
+        rasterizer.markChangesDirty();
+        Assert.assertEquals(new Rectangle(0, 2, 20, 9), image.getDirtyRegions().get(0));
+
+        // Anti-aliased line between two pixel centers covers the pixels on it fully
+        rasterizer.drawAntialiasedLine(2.5, 15.5, 12.5, 15.5, WHITE);
+        Assert.assertEquals(WHITE, image.getPixel(7, 15));
+        Assert.assertEquals(BLACK, image.getPixel(7, 16));
+    }
+
+    @Test(timeout = 2000)
+    public void testFarOffscreenLines() throws Exception {
+        final RawImage image = new RawImage(20, 20);
+        final RawRasterizer rasterizer = new RawRasterizer(image);
+
+        // Only the visible part of the line is walked
+        rasterizer.drawLine(-1000000000, 5, 1000000000, 300, WHITE);
+        rasterizer.drawLine(-1000000000, -1000000000, 1000000000, 1000000000, WHITE);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(WHITE, image.getPixel(i, i));
+        }
+        Assert.assertEquals(BLACK, image.getPixel(1, 0));
+
+        // End points so far apart that their differences do not fit in an int
+        rasterizer.drawLine(Integer.MIN_VALUE, 3, Integer.MAX_VALUE, 3, WHITE);
+        rasterizer.drawLine(10, Integer.MAX_VALUE, 10, Integer.MIN_VALUE, WHITE);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(WHITE, image.getPixel(i, 3));
+            Assert.assertEquals(WHITE, image.getPixel(10, i));
+        }
+        Assert.assertEquals(BLACK, image.getPixel(9, 4));
+
+        rasterizer.markChangesDirty();
+        Assert.assertEquals(new Rectangle(0, 0, 20, 20), image.getDirtyRegions().get(0));
+    }
+
+    @Test
+    public void testFilledShapes() throws Exception {
+        final RawImage image = new RawImage(20, 20);
+        final RawRasterizer rasterizer = new RawRasterizer(image);
+
+        rasterizer.fillPolygon(new int[]{2, 6, 6, 2}, new int[]{2, 2, 6, 6}, 4, WHITE);
+        int filled = 0;
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 20; x++) {
+                if (image.getPixel(x, y) == WHITE) filled++;
+            }
+        }
+        Assert.assertEquals(16, filled);
+        Assert.assertEquals(WHITE, image.getPixel(2, 2));
+        Assert.assertEquals(WHITE, image.getPixel(5, 5));
+
+        rasterizer.fillCircle(15, 15, 3, WHITE);
+        Assert.assertEquals(WHITE, image.getPixel(15, 15));
+        Assert.assertEquals(WHITE, image.getPixel(12, 15));
+        Assert.assertEquals(BLACK, image.getPixel(12, 12));
+
+        rasterizer.drawCircle(10, 10, 4, WHITE);
+        Assert.assertEquals(WHITE, image.getPixel(14, 10));
+        Assert.assertEquals(WHITE, image.getPixel(10, 6));
+        Assert.assertEquals(BLACK, image.getPixel(10, 10));
+    }
+
+    @Test
+    public void testBlendedSpan() throws Exception {
+        final RawImage image = new RawImage(10, 1);
+        final RawRasterizer rasterizer = new RawRasterizer(image);
+
+        rasterizer.drawSpan(-2, 0, 5, 0x80FFFFFF);
+        Assert.assertEquals(128, image.getPixel(2, 0) & 0xFF, 1);
+        Assert.assertEquals(BLACK, image.getPixel(3, 0));
+    }
+}
@@ -0,0 +1,38 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.uiflow.desktop.gradient.ColorGradients;
+import org.uiflow.desktop.gradient.ColorMapper;
+
+import java.awt.*;
+
+
+public class ScalarFieldImageTest {
+
+    @Test
+    public void testColorize() throws Exception {
+        final ScalarFieldImage field = new ScalarFieldImage(3, 2);
+        field.setValue(0, 0, 10f);
+        field.setValue(1, 0, 20f);
+        field.setValue(2, 0, Float.NaN);
+
+        final float[] range = field.getValueRange();
+        Assert.assertEquals(0f, range[0], 0f);
+        Assert.assertEquals(20f, range[1], 0f);
+
+        final RawImage target = new RawImage(3, 2);
+        field.colorize(target, ColorGradients.GREYSCALE, range[0], range[1]);
+        Assert.assertEquals(0xFF000000, target.getPixel(0, 1));
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(1, 0));
+        Assert.assertEquals(127, target.getPixel(0, 0) & 0xFF, 1);
+        Assert.assertEquals(0xFF000000, target.getPixel(2, 0));
+
+        // Recoloring with another mapping does not need the values to be recalculated
+        final ColorMapper<Float> mapper = ColorMapper.create(ColorGradients.GREYSCALE, 0, 0.1, 0);
+        mapper.setDefaultColor(Color.RED);
+        field.colorize(target, mapper);
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(0, 0));
+        Assert.assertEquals(Color.RED.getRGB(), target.getPixel(2, 0));
+    }
+}
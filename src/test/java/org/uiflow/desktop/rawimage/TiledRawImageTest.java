@@ -0,0 +1,53 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TiledRawImageTest {
+
+    @Test
+    public void testTilesAreAllocatedOnWrite() throws Exception {
+        final TiledRawImage image = new TiledRawImage(1000, 700, 6);
+        Assert.assertEquals(0, image.getAllocatedTileCount());
+
+        image.setPixel(10, 10, 0xFF000000);
+        Assert.assertEquals(0, image.getAllocatedTileCount());
+
+        image.setPixel(10, 10, 0xFFFF0000);
+        image.fillRect(100, 100, 20, 20, 0xFF00FF00);
+        Assert.assertEquals(2, image.getAllocatedTileCount());
+        Assert.assertEquals(0xFFFF0000, image.getPixel(10, 10));
+        Assert.assertEquals(0xFF00FF00, image.getPixel(119, 119));
+        Assert.assertEquals(0xFF000000, image.getPixel(120, 119));
+
+        // Covering a whole tile releases it, including partial tiles at the edge
+        image.fillRect(0, 0, 64, 64, 0xFF0000FF);
+        image.fillRect(960, 640, 100, 100, 0xFF0000FF);
+        Assert.assertEquals(1, image.getAllocatedTileCount());
+
+        image.fillRect(100, 100, 20, 20, 0xFF000000);
+        image.compact();
+        Assert.assertEquals(0, image.getAllocatedTileCount());
+    }
+
+    @Test
+    public void testSnapshotsAreCopiedOnWrite() throws Exception {
+        final TiledRawImage image = new TiledRawImage(300, 200);
+        image.setPixel(5, 5, 0xFF123456);
+
+        final TiledRawImage snapshot = image.snapshot();
+        image.setPixel(5, 5, 0xFF654321);
+        image.setPixel(299, 199, 0xFFFFFFFF);
+
+        Assert.assertEquals(0xFF123456, snapshot.getPixel(5, 5));
+        Assert.assertEquals(0xFF000000, snapshot.getPixel(299, 199));
+        Assert.assertEquals(0xFF654321, image.getPixel(5, 5));
+
+        // Copy a region spanning several tiles
+        final int[] target = new int[100 * 2];
+        image.copyRegion(250, 198, 50, 2, target, 50, 100);
+        Assert.assertEquals(0xFF000000, target[50]);
+        Assert.assertEquals(0xFFFFFFFF, target[199]);
+    }
+}
@@ -0,0 +1,66 @@
+package org.uiflow.desktop.rawimage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ToneMapperTest {
+
+    @Test
+    public void testToneMapping() throws Exception {
+        final FloatRawImage hdr = new FloatRawImage(4, 2);
+        hdr.setPixel(0, 0, 0.5f, 1f, 100f);
+        hdr.setPixel(1, 0, -1f, Float.NaN, 0f);
+
+        final RawImage target = new RawImage(4, 2);
+        final ToneMapper mapper = new ToneMapper(ToneMappingOperator.LINEAR, 0, 1);
+        Assert.assertTrue(mapper.apply(hdr, target));
+        Assert.assertEquals(0xFF80FFFF, target.getPixel(0, 0));
+        Assert.assertEquals(0xFF000000, target.getPixel(1, 0));
+
+        // Nothing changed, so the mapping is skipped
+        Assert.assertFalse(mapper.apply(hdr, target));
+
+        // One stop less exposure halves the values
+        mapper.setExposure(-1);
+        Assert.assertTrue(mapper.apply(hdr, target));
+        Assert.assertEquals(0xFF4080FF, target.getPixel(0, 0));
+
+        // Reinhard maps one to one half
+        mapper.setExposure(0);
+        mapper.setOperator(ToneMappingOperator.REINHARD);
+        Assert.assertTrue(mapper.apply(hdr, target));
+        Assert.assertEquals(0x80, (target.getPixel(0, 0) >> 8) & 0xFF);
+
+        hdr.setPixel(2, 1, 1f, 1f, 1f);
+        Assert.assertTrue(mapper.apply(hdr, target));
+        Assert.assertEquals(0xFF808080, target.getPixel(2, 1));
+    }
+
+    @Test
+    public void testDarkLevels() throws Exception {
+        // A dark ramp, up to a bit above output level 10 with the default gamma of 2.2
+        final int count = 10000;
+        final FloatRawImage hdr = new FloatRawImage(count, 1);
+        for (int x = 0; x < count; x++) {
+            final float value = 0.001f * x / count;
+            hdr.setPixel(x, 0, value, value, value);
+        }
+
+        final RawImage target = new RawImage(count, 1);
+        new ToneMapper(ToneMappingOperator.LINEAR, 0, 2.2).apply(hdr, target);
+
+        // No dark levels are skipped, and the output never decreases
+        final boolean[] reached = new boolean[256];
+        int previous = 0;
+        for (int x = 0; x < count; x++) {
+            final int level = target.getPixel(x, 0) & 0xFF;
+            Assert.assertTrue("The output should not decrease", level >= previous);
+            reached[level] = true;
+            previous = level;
+        }
+        for (int level = 1; level <= 10; level++) {
+            Assert.assertTrue("Level " + level + " should be reached", reached[level]);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.uiflow.desktop.rawimage.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.uiflow.desktop.rawimage.RawImage;
+
+
+public class RawImageFilterPipelineTest {
+
+    @Test
+    public void testBlur() throws Exception {
+        final RawImage image = new RawImage(200, 100);
+        image.clearToColor(0xFF000000);
+        image.setPixel(50, 50, 0xFFFFFFFF);
+
+        // A 3x3 box blur spreads the pixel evenly over its neighbours
+        new RawImageFilterPipeline(BlurFilter.box(1)).apply(image);
+        Assert.assertEquals(28, image.getPixel(49, 49) & 0xFF);
+        Assert.assertEquals(28, image.getPixel(51, 51) & 0xFF);
+        Assert.assertEquals(0, image.getPixel(52, 50) & 0xFF);
+        Assert.assertEquals(0xFF, image.getPixel(50, 50) >>> 24);
+
+        // Uniform images stay the same, also at the edges
+        image.clearToColor(0xFF804020);
+        new RawImageFilterPipeline(BlurFilter.gaussian(3)).apply(image);
+        Assert.assertEquals(0xFF804020, image.getPixel(0, 0));
+        Assert.assertEquals(0xFF804020, image.getPixel(199, 99));
+    }
+
+    @Test
+    public void testConvolutionAndMorphology() throws Exception {
+        final RawImage source = new RawImage(20, 20);
+        source.clearToColor(0xFF404040);
+        source.setPixel(10, 10, 0xFF808080);
+        final RawImage target = new RawImage(20, 20);
+
+        ConvolutionFilter.edgeDetect().apply(source, target, new FilterScratch());
+        Assert.assertEquals(0xFF000000, target.getPixel(0, 0));
+        Assert.assertEquals(0xFFFFFFFF, target.getPixel(10, 10));
+        Assert.assertEquals(0xFF000000, target.getPixel(11, 10));
+
+        // Dilation spreads the bright pixel, and eroding afterwards shrinks it back
+        final RawImageFilterPipeline pipeline = new RawImageFilterPipeline(MorphologyFilter.dilate(2));
+        pipeline.apply(source, target);
+        Assert.assertEquals(0xFF808080, target.getPixel(12, 8));
+        Assert.assertEquals(0xFF404040, target.getPixel(13, 10));
+
+        pipeline.addFilter(MorphologyFilter.erode(2));
+        pipeline.apply(source, target);
+        Assert.assertEquals(0xFF808080, target.getPixel(10, 10));
+        Assert.assertEquals(0xFF404040, target.getPixel(11, 10));
+    }
+}